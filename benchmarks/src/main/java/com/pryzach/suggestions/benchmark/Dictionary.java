@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.benchmark;
+
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.model.WordRTL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible dictionaries for benchmarks. Same size and seed always produce exactly the same words, so numbers of
+ * different runs (and different engines) are comparable
+ */
+public class Dictionary {
+    /**
+     * Latin letters, repeated according to their approximate frequency in english text
+     */
+    private static final String LATIN = "eeeeeeeeeeeetttttttttaaaaaaaaooooooooiiiiiiinnnnnnnssssssrrrrrrhhhhhhddddllllcccuuummmwwffggyyppbbvkjxqz";
+
+    /**
+     * Hebrew letters
+     */
+    private static final String HEBREW = "אבגדהוזחטיכלמנסעפצקרשת";
+
+    private final List<Word> words;
+    private final List<String> names;
+
+    private Dictionary(List<Word> words, List<String> names) {
+        this.words = words;
+        this.names = names;
+    }
+
+    /**
+     * @param size amount of words
+     * @param seed random seed
+     * @return dictionary of LTR words with zipf-like popularity
+     */
+    public static Dictionary latin(int size, long seed) {
+        return generate(size, seed, LATIN, false);
+    }
+
+    /**
+     * @param size amount of words
+     * @param seed random seed
+     * @return dictionary of {@link com.pryzach.suggestions.model.WordRTL} words with zipf-like popularity
+     */
+    public static Dictionary hebrew(int size, long seed) {
+        return generate(size, seed, HEBREW, true);
+    }
+
+    private static Dictionary generate(int size, long seed, String alphabet, boolean rtl) {
+        Random random = new Random(seed);
+        List<Word> words = new ArrayList<>(size);
+        List<String> names = new ArrayList<>(size);
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            name.setLength(0);
+
+            // 3 to 14 letters, most of the words are 5-9 letters long
+            int length = 3 + random.nextInt(6) + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            int popularityIndex = Math.max(1, (int) (1000000L / (1 + random.nextInt(size))));
+
+            Word word = rtl ? new WordRTL(name.toString(), popularityIndex) : new Word(name.toString(), popularityIndex);
+
+            // names are kept the way they are indexed (RTL words are reversed)
+            names.add(word.getName());
+            words.add(word);
+        }
+
+        return new Dictionary(words, names);
+    }
+
+    /**
+     * @return words to add
+     */
+    public List<Word> getWords() {
+        return words;
+    }
+
+    /**
+     * Selectors are prefixes of dictionary words, so every selector has at least one match
+     *
+     * @param amount amount of selectors
+     * @param minLength minimal selector length
+     * @param maxLength maximal selector length
+     * @param seed random seed
+     * @return selectors, in the order they should be queried
+     */
+    public String[] selectors(int amount, int minLength, int maxLength, long seed) {
+        Random random = new Random(seed);
+        String[] selectors = new String[amount];
+
+        for (int i = 0; i < amount; ) {
+            String name = names.get(random.nextInt(names.size()));
+
+            if (name.length() >= minLength) {
+                selectors[i++] = name.substring(0, Math.min(name.length(), minLength + random.nextInt(maxLength - minLength + 1)));
+            }
+        }
+
+        return selectors;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.benchmark;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.service.SuggestionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk indexing ({@link com.pryzach.suggestions.service.SuggestionService#addWords(java.util.Collection)}) benchmark.
+ * Every invocation indexes whole dictionary into new service instance
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class IndexingBenchmark {
+    @Param({"PREFIX_CACHE", "RADIX_TREE", "SORTED_ARRAY"})
+    public SuggestionEngine engine;
+
+    @Param({"10000", "171476", "2000000"})
+    public int size;
+
+    private Dictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dictionary = Dictionary.latin(size, 42);
+    }
+
+    @Benchmark
+    public SuggestionService addWords() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(engine);
+        suggestionService.addWords(dictionary.getWords());
+
+        return suggestionService;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.benchmark;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.model.WordRTL;
+import com.pryzach.suggestions.service.SuggestionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query benchmarks. Dictionary is indexed once per trial, selectors are prefixes of dictionary words and are cycled
+ * through, so every invocation does real lookup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class SuggestBenchmark {
+    private static final int SELECTORS = 4096;
+    private static final int LIMIT = 10;
+
+    @Param({"PREFIX_CACHE", "RADIX_TREE", "SORTED_ARRAY"})
+    public SuggestionEngine engine;
+
+    @Param({"10000", "171476", "2000000"})
+    public int size;
+
+    private SuggestionService suggestionService;
+    private SuggestionService suggestionServiceRTL;
+
+    private String[] shortSelectors;
+    private String[] longSelectors;
+    private String[][] shortSuggestions;
+    private WordRTL[] selectorsRTL;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Dictionary dictionary = Dictionary.latin(size, 42);
+        suggestionService = SuggestionFactory.getSuggestionService(engine);
+        suggestionService.addWords(dictionary.getWords());
+
+        // short selectors are the most expensive ones for prefix based engines, long - exceed default max caching length
+        shortSelectors = dictionary.selectors(SELECTORS, 1, 3, 7);
+        longSelectors = dictionary.selectors(SELECTORS, 8, 12, 7);
+
+        shortSuggestions = new String[SELECTORS][];
+        for (int i = 0; i < SELECTORS; i++) {
+            shortSuggestions[i] = suggestionService.suggest(shortSelectors[i], LIMIT);
+        }
+
+        Dictionary dictionaryRTL = Dictionary.hebrew(size, 42);
+        suggestionServiceRTL = SuggestionFactory.getSuggestionService(engine);
+        suggestionServiceRTL.addWords(dictionaryRTL.getWords());
+
+        // selectors are prefixes of indexed (reversed) RTL words, reversing them back to the way user types them
+        String[] namesRTL = dictionaryRTL.selectors(SELECTORS, 1, 4, 7);
+        selectorsRTL = new WordRTL[SELECTORS];
+        for (int i = 0; i < SELECTORS; i++) {
+            selectorsRTL[i] = new WordRTL(new StringBuilder(namesRTL[i]).reverse().toString());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next() {
+            return position = (position + 1) & (SELECTORS - 1);
+        }
+    }
+
+    @Benchmark
+    public String[] suggestShort(Cursor cursor) {
+        return suggestionService.suggest(shortSelectors[cursor.next()], LIMIT);
+    }
+
+    @Benchmark
+    public String[] suggestLong(Cursor cursor) {
+        return suggestionService.suggest(longSelectors[cursor.next()], LIMIT);
+    }
+
+    @Benchmark
+    public String suggestSeparated(Cursor cursor) {
+        return suggestionService.suggest(shortSelectors[cursor.next()], "|", LIMIT);
+    }
+
+    @Benchmark
+    public String[] suggestNextLetter(Cursor cursor) {
+        int position = cursor.next();
+
+        return suggestionService.suggestNextLetter(shortSelectors[position], shortSuggestions[position]);
+    }
+
+    @Benchmark
+    public WordRTL[] suggestRTL(Cursor cursor) {
+        return suggestionServiceRTL.suggest(selectorsRTL[cursor.next()], LIMIT);
+    }
+
+    @Benchmark
+    public String suggestRTLSeparated(Cursor cursor) {
+        return suggestionServiceRTL.suggest(selectorsRTL[cursor.next()], "|", LIMIT);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.server;
+
+import com.pryzach.suggestions.model.NextLetter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes responses into UTF-8 JSON. Written by hand, as responses are flat arrays and every byte is encoded once
+ * per hot prefix anyway
+ */
+final class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Json() {
+    }
+
+    /**
+     * @param suggestions suggested words
+     * @return ["word","word"]
+     */
+    static byte[] encode(String[] suggestions) {
+        StringBuilder json = new StringBuilder(2 + suggestions.length * 16);
+        json.append('[');
+
+        for (int i = 0; i < suggestions.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            append(json, suggestions[i]);
+        }
+
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param nextLetters suggested next letters
+     * @return [{"letter":"s","count":2,"popularityIndex":20}]
+     */
+    static byte[] encode(NextLetter[] nextLetters) {
+        StringBuilder json = new StringBuilder(2 + nextLetters.length * 48);
+        json.append('[');
+
+        for (int i = 0; i < nextLetters.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"letter\":");
+            append(json, nextLetters[i].getLetter());
+            json.append(",\"count\":").append(nextLetters[i].getCount());
+            json.append(",\"popularityIndex\":").append(nextLetters[i].getPopularityIndex());
+            json.append('}');
+        }
+
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param message error message
+     * @return {"error":"message"}
+     */
+    static byte[] error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        append(json, message);
+
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends quoted string, quotes, backslashes and control characters are escaped
+     */
+    private static void append(StringBuilder json, String value) {
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                json.append(c);
+            }
+        }
+
+        json.append('"');
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.server;
+
+import com.pryzach.suggestions.DictionaryLoader;
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.metrics.Histogram;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test harness: starts {@link com.pryzach.suggestions.server.SuggestionServer} on localhost and fires suggest
+ * requests at it over persistent connections, every connection sends requests in pipelined batches. Prints throughput
+ * and latency percentiles (latency of the request is time from sending its batch to reading its response).
+ *
+ * <pre>
+ * java -cp server.jar com.pryzach.suggestions.server.LoadTest [dictionary.tsv|-] [connections] [requests per connection] [pipeline depth]
+ * </pre>
+ *
+ * Without dictionary (or with "-") 171476 generated words are served. Selectors are prefixes of dictionary words, 1 to
+ * 6 letters long, so hot prefixes are asked the most
+ */
+public class LoadTest {
+    private static final int GENERATED_SIZE = 171476;
+    private static final String LETTERS = "eeeeeeeeeeeetttttttttaaaaaaaaooooooooiiiiiiinnnnnnnssssssrrrrrrhhhhhhddddllllcccuuummmwwffggyyppbbvkjxqz";
+
+    public static void main(String[] args) throws Exception {
+        String dictionary = args.length > 0 ? args[0] : "-";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        int pipeline = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+        List<String> names = new ArrayList<>();
+
+        if ("-".equals(dictionary)) {
+            Random random = new Random(42);
+            List<Word> words = new ArrayList<>();
+
+            for (int i = 0; i < GENERATED_SIZE; i++) {
+                StringBuilder name = new StringBuilder();
+                for (int j = 3 + random.nextInt(6) + random.nextInt(6); j > 0; j--) {
+                    name.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+                }
+
+                words.add(new Word(name.toString(), Math.max(1, 1000000 / (1 + random.nextInt(GENERATED_SIZE)))));
+                names.add(name.toString());
+            }
+
+            suggestionService.addWords(words);
+        } else {
+            DictionaryLoader.load(suggestionService, Paths.get(dictionary));
+
+            for (String line : Files.readAllLines(Paths.get(dictionary), StandardCharsets.UTF_8)) {
+                int separator = line.lastIndexOf('\t');
+                names.add(separator < 0 ? line : line.substring(0, separator));
+            }
+        }
+
+        String[] selectors = selectors(names, 100000, new Random(7));
+
+        SuggestionServer server = new SuggestionServer(suggestionService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+
+        try {
+            // warm up, then measure
+            run(server.getPort(), selectors, connections, Math.max(pipeline, requests / 10), pipeline);
+
+            long start = System.nanoTime();
+            Histogram latencies = run(server.getPort(), selectors, connections, requests, pipeline);
+            long nanos = System.nanoTime() - start;
+
+            System.out.println("Requests [" + latencies.getCount() + "] over [" + connections + "] connections, pipeline depth [" + pipeline + "]");
+            System.out.println("Took [" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms], [" + (latencies.getCount() * 1000000000L / Math.max(1, nanos)) + "] requests per second");
+            System.out.println("Latency, us: mean [" + Math.round(latencies.getMean() / 1000) + "] p50 [" + latencies.getValueAtPercentile(50) / 1000
+                    + "] p99 [" + latencies.getValueAtPercentile(99) / 1000 + "] p99.9 [" + latencies.getValueAtPercentile(99.9) / 1000
+                    + "] max [" + latencies.getMax() / 1000 + "]");
+            System.out.println("Served pre-encoded [" + server.getHotHitCount() + "]");
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @return prefixes of random names, 1 to 6 letters long
+     */
+    static String[] selectors(List<String> names, int amount, Random random) {
+        String[] selectors = new String[amount];
+
+        for (int i = 0; i < amount; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            selectors[i] = name.substring(0, Math.min(name.length(), 1 + random.nextInt(6)));
+        }
+
+        return selectors;
+    }
+
+    /**
+     * Fires suggest requests from every connection in parallel
+     *
+     * @param port localhost port of the server
+     * @param selectors selectors, every connection goes through them from its own offset
+     * @param connections amount of connections
+     * @param requests amount of requests per connection
+     * @param pipeline amount of requests sent before responses are read
+     * @return latencies of all requests, in nanoseconds
+     * @throws IOException if any request fails or gets non 200 response
+     */
+    static Histogram run(final int port, final String[] selectors, int connections, final int requests, final int pipeline) throws IOException, InterruptedException {
+        final Histogram latencies = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                final int offset = i * (selectors.length / connections);
+
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        connection(port, selectors, offset, requests, pipeline, latencies);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        return latencies;
+    }
+
+    private static void connection(int port, String[] selectors, int offset, int requests, int pipeline, Histogram latencies) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+
+            OutputStream output = socket.getOutputStream();
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+
+            for (int sent = 0; sent < requests; ) {
+                int batch = Math.min(pipeline, requests - sent);
+
+                StringBuilder requestsBatch = new StringBuilder();
+                for (int i = 0; i < batch; i++) {
+                    String selector = selectors[(offset + sent + i) % selectors.length];
+
+                    requestsBatch.append("GET /suggest?q=").append(URLEncoder.encode(selector, "UTF-8")).append("&limit=10 HTTP/1.1\r\n")
+                            .append("Host: localhost\r\n\r\n");
+                }
+
+                long start = System.nanoTime();
+                output.write(requestsBatch.toString().getBytes(StandardCharsets.UTF_8));
+                output.flush();
+
+                for (int i = 0; i < batch; i++) {
+                    response(input);
+                    latencies.record(System.nanoTime() - start);
+                }
+
+                sent += batch;
+            }
+        }
+    }
+
+    /**
+     * Reads one response, body is skipped
+     */
+    private static void response(InputStream input) throws IOException {
+        String status = line(input);
+
+        if (!status.startsWith("HTTP/1.1 200")) {
+            throw new IOException("Unexpected response [" + status + "]");
+        }
+
+        long length = -1;
+        for (String header = line(input); !header.isEmpty(); header = line(input)) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, "Content-Length:".length())) {
+                length = Long.parseLong(header.substring("Content-Length:".length()).trim());
+            }
+        }
+
+        if (length < 0) {
+            throw new IOException("Response has no content length, connection can't be kept alive");
+        }
+
+        while (length > 0) {
+            long skipped = input.skip(length);
+
+            if (skipped <= 0) {
+                throw new IOException("Connection closed in the middle of response");
+            }
+
+            length -= skipped;
+        }
+    }
+
+    private static String line(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection closed by server");
+            }
+
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+
+        return line.toString();
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.server;
+
+import com.pryzach.suggestions.DictionaryLoader;
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.service.SuggestionService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP endpoint of {@link com.pryzach.suggestions.service.SuggestionService}, built on JDK HTTP server, so no
+ * servlet stack is needed:
+ *
+ * <pre>
+ * GET /suggest?q=succ&amp;limit=10   ["successor","success"]
+ * GET /next?q=succ                [{"letter":"e","count":2,"popularityIndex":20}]
+ * </pre>
+ *
+ * Responses are UTF-8 JSON sent with content length, so HTTP/1.1 connections are kept alive and pipelined requests are
+ * answered in order. Responses of hot prefixes (selectors not longer than hot prefix length) are encoded once and then
+ * served as ready bytes. Server doesn't know when words of the service change, call {@link #invalidate()} after that.
+ *
+ * Pre-encoded responses are kept in two generations: new responses go into the current one, responses asked from the
+ * previous one are moved into the current one, and once current generation is full previous one is dropped. So responses
+ * which aren't asked anymore are evicted without any locking on the read path.
+ *
+ * Run as standalone server:
+ *
+ * <pre>
+ * java -jar server.jar dictionary.tsv|dictionary.index [port]
+ * </pre>
+ */
+public class SuggestionServer {
+    /**
+     * Limit of suggestions if request has none
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * Bigger limits are lowered to this
+     */
+    public static final int MAX_LIMIT = 100;
+
+    /**
+     * Selectors up to this length get pre-encoded responses by default, there are few of them and they are asked the most
+     */
+    public static final int DEFAULT_HOT_PREFIX_LENGTH = 2;
+
+    /**
+     * Default bound of pre-encoded responses, least recently asked ones are evicted above it
+     */
+    private static final int MAX_HOT_RESPONSES = 65536;
+
+    static {
+        // JDK server writes headers and body separately, with Nagle's algorithm every keep alive response waits for
+        // delayed ACK of the client. Property is read once, when the first server is created, so it's set only if not set
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final SuggestionService suggestionService;
+    private final HttpServer server;
+    private final int hotPrefixLength;
+    private final int maxHotResponses;
+
+    /**
+     * Executor created by server, null if it was supplied
+     */
+    private final ExecutorService ownExecutor;
+
+    /**
+     * Pre-encoded responses, by endpoint, limit and case folded selector: current and previous generation, replaced under
+     * server lock
+     */
+    private volatile ConcurrentMap<String, byte[]> hotResponses = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<String, byte[]> previousHotResponses = new ConcurrentHashMap<>();
+
+    /**
+     * Changed on every invalidation, so responses which were being encoded meanwhile aren't cached
+     */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final LongAdder hotHitCount = new LongAdder();
+
+    /**
+     * Creates server with pool of one thread per CPU and default hot prefix length, call {@link #start()} to serve
+     *
+     * @param suggestionService service to serve suggestions of
+     * @param address address to listen on, port 0 picks free one
+     * @throws IOException if address can't be bound
+     */
+    public SuggestionServer(SuggestionService suggestionService, InetSocketAddress address) throws IOException {
+        this(suggestionService, address, null, DEFAULT_HOT_PREFIX_LENGTH);
+    }
+
+    /**
+     * Creates server, call {@link #start()} to serve
+     *
+     * @param suggestionService service to serve suggestions of
+     * @param address address to listen on, port 0 picks free one
+     * @param executor executor requests are handled on, null for pool of one thread per CPU
+     * @param hotPrefixLength selectors up to this length get pre-encoded responses, 0 to encode every response
+     * @throws IOException if address can't be bound
+     */
+    public SuggestionServer(SuggestionService suggestionService, InetSocketAddress address, Executor executor, int hotPrefixLength) throws IOException {
+        this(suggestionService, address, executor, hotPrefixLength, MAX_HOT_RESPONSES);
+    }
+
+    /**
+     * Creates server with given bound of pre-encoded responses
+     */
+    SuggestionServer(SuggestionService suggestionService, InetSocketAddress address, Executor executor, int hotPrefixLength, int maxHotResponses) throws IOException {
+        this.suggestionService = suggestionService;
+        this.hotPrefixLength = hotPrefixLength;
+        this.maxHotResponses = maxHotResponses;
+
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/suggest", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                SuggestionServer.this.handle(exchange, false);
+            }
+        });
+        this.server.createContext("/next", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                SuggestionServer.this.handle(exchange, true);
+            }
+        });
+
+        this.ownExecutor = executor == null ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) : null;
+        this.server.setExecutor(executor == null ? this.ownExecutor : executor);
+    }
+
+    /**
+     * Starts serving requests in background
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops server, requests in progress are given a second to complete
+     */
+    public void stop() {
+        this.server.stop(1);
+
+        if (this.ownExecutor != null) {
+            this.ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return port server listens on
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Drops pre-encoded responses, call it after words of the service are added, removed or updated
+     */
+    public synchronized void invalidate() {
+        // counted before responses are dropped, so response encoded before invalidation is either dropped or not cached
+        this.invalidationCount.incrementAndGet();
+
+        this.hotResponses = new ConcurrentHashMap<>();
+        this.previousHotResponses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return amount of pre-encoded responses
+     */
+    int getHotResponseCount() {
+        return this.hotResponses.size() + this.previousHotResponses.size();
+    }
+
+    /**
+     * @return amount of requests served with pre-encoded response
+     */
+    public long getHotHitCount() {
+        return this.hotHitCount.sum();
+    }
+
+    private void handle(HttpExchange exchange, boolean nextLetters) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, Json.error("Only GET is supported"));
+                return;
+            }
+
+            Map<String, String> parameters;
+            try {
+                parameters = parameters(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, Json.error("Query is not properly URL encoded"));
+                return;
+            }
+
+            String selector = parameters.get("q");
+
+            if (selector == null) {
+                send(exchange, 400, Json.error("Selector [q] is missing"));
+                return;
+            }
+
+            int limit = DEFAULT_LIMIT;
+            if (parameters.containsKey("limit")) {
+                try {
+                    limit = Math.min(MAX_LIMIT, Integer.parseInt(parameters.get("limit")));
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+
+                if (limit < 0) {
+                    send(exchange, 400, Json.error("Limit should be a non negative number [" + parameters.get("limit") + "]"));
+                    return;
+                }
+            }
+
+            send(exchange, 200, nextLetters ? nextLetters(selector) : suggestions(selector, limit));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] suggestions(String selector, int limit) {
+        if (selector.length() > this.hotPrefixLength) {
+            return Json.encode(this.suggestionService.suggest(selector, limit));
+        }
+
+        String key = "s" + limit + ":" + fold(selector);
+        long invalidationCount = this.invalidationCount.get();
+        byte[] response = hotResponse(key, invalidationCount);
+
+        if (response == null) {
+            response = Json.encode(this.suggestionService.suggest(selector, limit));
+            cache(key, response, invalidationCount);
+        } else {
+            this.hotHitCount.increment();
+        }
+
+        return response;
+    }
+
+    private byte[] nextLetters(String selector) {
+        if (selector.length() > this.hotPrefixLength) {
+            return Json.encode(this.suggestionService.suggestNextLetter(selector));
+        }
+
+        String key = "n:" + fold(selector);
+        long invalidationCount = this.invalidationCount.get();
+        byte[] response = hotResponse(key, invalidationCount);
+
+        if (response == null) {
+            response = Json.encode(this.suggestionService.suggestNextLetter(selector));
+            cache(key, response, invalidationCount);
+        } else {
+            this.hotHitCount.increment();
+        }
+
+        return response;
+    }
+
+    /**
+     * Looks pre-encoded response up, response of previous generation is moved into current one
+     */
+    private byte[] hotResponse(String key, long invalidationCount) {
+        byte[] response = this.hotResponses.get(key);
+
+        if (response == null) {
+            response = this.previousHotResponses.get(key);
+
+            if (response != null) {
+                cache(key, response, invalidationCount);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Caches response unless server was invalidated since invalidation count was read, starts new generation once current
+     * one is full
+     */
+    private void cache(String key, byte[] response, long invalidationCount) {
+        ConcurrentMap<String, byte[]> hotResponses = this.hotResponses;
+        hotResponses.put(key, response);
+
+        // invalidation may have happened after response was put, in that case it may be stale
+        if (this.invalidationCount.get() != invalidationCount) {
+            hotResponses.remove(key, response);
+            return;
+        }
+
+        // bound is checked loosely, concurrent requests may put few responses above it
+        if (hotResponses.size() >= this.maxHotResponses / 2) {
+            rotate(hotResponses);
+        }
+    }
+
+    private synchronized void rotate(ConcurrentMap<String, byte[]> full) {
+        // other request may have rotated it already
+        if (this.hotResponses == full) {
+            this.previousHotResponses = full;
+            this.hotResponses = new ConcurrentHashMap<>();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    /**
+     * Parses URL encoded query, parameters without value are empty
+     *
+     * @throws IllegalArgumentException if query has malformed escape
+     */
+    private static Map<String, String> parameters(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query == null) {
+            return parameters;
+        }
+
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+
+            if (separator < 0) {
+                parameters.put(URLDecoder.decode(parameter, "UTF-8"), "");
+            } else {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            }
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Case folds selector the same way engines do, so selectors which differ only in case share pre-encoded response
+     */
+    private static String fold(String selector) {
+        char[] chars = new char[selector.length()];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(selector.charAt(i));
+        }
+
+        return new String(chars);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java -jar server.jar dictionary.tsv|dictionary.index [port]");
+            System.exit(1);
+        }
+
+        Path file = Paths.get(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+
+        SuggestionService suggestionService;
+        if (file.toString().endsWith(".index")) {
+            suggestionService = SuggestionFactory.mapSuggestionService(file);
+        } else {
+            suggestionService = SuggestionFactory.getSuggestionService();
+            DictionaryLoader.load(suggestionService, file);
+        }
+
+        SuggestionServer server = new SuggestionServer(suggestionService, new InetSocketAddress(port));
+        server.start();
+
+        System.out.println("Serving [" + file + "] on port [" + server.getPort() + "]");
+    }
+}
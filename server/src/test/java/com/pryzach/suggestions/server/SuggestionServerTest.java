@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.server;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.metrics.Histogram;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.SuggestionServiceImpl;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SuggestionServerTest extends TestCase {
+    private SuggestionService suggestionService;
+    private SuggestionServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        suggestionService = SuggestionFactory.getSuggestionService();
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("failure", 5),
+                new Word("su \"quoted\" \\ naïve", 1)));
+
+        server = new SuggestionServer(suggestionService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+    }
+
+    public void testSuggest() throws Exception {
+        Assert.assertEquals("[\"successor\",\"success\"]", get("/suggest?q=SUCC"));
+        Assert.assertEquals("[\"successor\"]", get("/suggest?q=succ&limit=1"));
+        Assert.assertEquals("[]", get("/suggest?q=xyz"));
+
+        // quotes and backslashes are escaped, non ASCII letters are sent as UTF-8
+        Assert.assertEquals("[\"su \\\"quoted\\\" \\\\ naïve\"]", get("/suggest?q=su+%22"));
+    }
+
+    public void testNextLetter() throws Exception {
+        Assert.assertEquals("[{\"letter\":\"c\",\"count\":2,\"popularityIndex\":20},{\"letter\":\" \",\"count\":1,\"popularityIndex\":1}]", get("/next?q=su"));
+    }
+
+    public void testHotPrefixesArePreEncoded() throws Exception {
+        Assert.assertEquals("[\"successor\",\"success\",\"su \\\"quoted\\\" \\\\ naïve\"]", get("/suggest?q=su"));
+        Assert.assertEquals(0, server.getHotHitCount());
+
+        // same selector in different case shares response, longer selectors are encoded on every request
+        Assert.assertEquals("[\"successor\",\"success\",\"su \\\"quoted\\\" \\\\ naïve\"]", get("/suggest?q=SU"));
+        get("/suggest?q=suc");
+        get("/suggest?q=suc");
+        Assert.assertEquals(1, server.getHotHitCount());
+
+        // changed words are served after invalidation
+        suggestionService.addWord(new Word("sum", 30));
+        server.invalidate();
+        Assert.assertEquals("[\"sum\"]", get("/suggest?q=su&limit=1"));
+    }
+
+    public void testResponseEncodedDuringInvalidationIsNotCached() throws Exception {
+        final AtomicReference<SuggestionServer> invalidated = new AtomicReference<>();
+        SuggestionService suggestionService = new SuggestionServiceImpl(1, 6) {
+            @Override
+            public String[] suggest(String selector, int limit) {
+                String[] suggestions = super.suggest(selector, limit);
+
+                // words change and server is invalidated after suggestions were looked up, but before they are cached
+                SuggestionServer server = invalidated.getAndSet(null);
+                if (server != null) {
+                    addWord(new Word("sum", 30));
+                    server.invalidate();
+                }
+
+                return suggestions;
+            }
+        };
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20)));
+
+        SuggestionServer server = new SuggestionServer(suggestionService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        try {
+            invalidated.set(server);
+
+            Assert.assertEquals("[\"successor\"]", get(server, "/suggest?q=su&limit=1"));
+            Assert.assertEquals("[\"sum\"]", get(server, "/suggest?q=su&limit=1"));
+            Assert.assertEquals(0, server.getHotHitCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testLeastRecentlyAskedHotResponsesAreEvicted() throws Exception {
+        SuggestionServer server = new SuggestionServer(suggestionService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), null, 2, 4);
+        server.start();
+        try {
+            // one prefix is asked all the time, others once
+            for (char letter = 'a'; letter <= 'z'; letter++) {
+                get(server, "/suggest?q=su");
+                get(server, "/suggest?q=" + letter);
+
+                Assert.assertTrue(server.getHotResponseCount() <= 4);
+            }
+
+            Assert.assertEquals(25, server.getHotHitCount());
+
+            // prefix which becomes hot later is still pre-encoded
+            get(server, "/next?q=fa");
+            get(server, "/next?q=fa");
+            Assert.assertEquals(26, server.getHotHitCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testInvalidRequests() throws Exception {
+        Assert.assertEquals(400, status("/suggest"));
+        Assert.assertEquals(400, status("/suggest?q=su&limit=x"));
+        Assert.assertEquals(400, status("/suggest?q=su&limit=-1"));
+        Assert.assertEquals(400, status("/suggest?q=%zz"));
+        Assert.assertEquals(400, status("/next?q=su%2"));
+        Assert.assertEquals(404, status("/unknown?q=su"));
+
+        HttpURLConnection connection = (HttpURLConnection) url("/suggest?q=su").openConnection();
+        connection.setRequestMethod("POST");
+        Assert.assertEquals(405, connection.getResponseCode());
+    }
+
+    public void testPipelinedLoad() throws Exception {
+        String[] selectors = LoadTest.selectors(Arrays.asList("success", "successor", "failure"), 100, new Random());
+        Histogram latencies = LoadTest.run(server.getPort(), selectors, 4, 200, 8);
+
+        Assert.assertEquals(800, latencies.getCount());
+    }
+
+    private URL url(String path) throws IOException {
+        return url(server, path);
+    }
+
+    private static URL url(SuggestionServer server, String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private int status(String path) throws IOException {
+        return ((HttpURLConnection) url(path).openConnection()).getResponseCode();
+    }
+
+    private String get(String path) throws IOException {
+        return get(server, path);
+    }
+
+    private static String get(SuggestionServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(server, path).openConnection();
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("application/json; charset=utf-8", connection.getContentType());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = input.read(buffer)) > 0; ) {
+                body.write(buffer, 0, read);
+            }
+        }
+
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions;
+
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams dictionary file into {@link com.pryzach.suggestions.service.SuggestionService}. Dictionary is UTF-8 text,
+ * one word per line:
+ *
+ * <pre>
+ * name&lt;TAB&gt;popularityIndex
+ * </pre>
+ *
+ * Name may contain spaces, popularity index is optional (0 if missing). Empty lines and byte order mark are skipped.
+ *
+ * Words are added in chunks while file is read, so whole dictionary is never kept in memory as list of words and peak
+ * heap during load stays close to the size of the index itself
+ */
+public final class DictionaryLoader {
+    /**
+     * Words added at once, big enough for parallel bulk load of {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private DictionaryLoader() {
+    }
+
+    /**
+     * @param suggestionService service to add words to
+     * @param file dictionary file
+     * @return amount of read words
+     * @throws IOException if file can't be read, isn't valid UTF-8 or has invalid popularity index
+     */
+    public static int load(SuggestionService suggestionService, Path file) throws IOException {
+        return load(suggestionService, file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param suggestionService service to add words to
+     * @param file dictionary file
+     * @param chunkSize amount of words added at once
+     * @return amount of read words
+     * @throws IOException if file can't be read, isn't valid UTF-8 or has invalid popularity index
+     */
+    public static int load(SuggestionService suggestionService, Path file, int chunkSize) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(suggestionService, reader, chunkSize);
+        }
+    }
+
+    /**
+     * Reads dictionary from the stream, stream isn't closed
+     *
+     * @param suggestionService service to add words to
+     * @param stream dictionary stream
+     * @return amount of read words
+     * @throws IOException if stream can't be read, isn't valid UTF-8 or has invalid popularity index
+     */
+    public static int load(SuggestionService suggestionService, InputStream stream) throws IOException {
+        return load(suggestionService, stream, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Reads dictionary from the stream, stream isn't closed
+     *
+     * @param suggestionService service to add words to
+     * @param stream dictionary stream
+     * @param chunkSize amount of words added at once
+     * @return amount of read words
+     * @throws IOException if stream can't be read, isn't valid UTF-8 or has invalid popularity index
+     */
+    public static int load(SuggestionService suggestionService, InputStream stream, int chunkSize) throws IOException {
+        // decoder reports malformed input instead of replacing it, same as for files
+        return load(suggestionService, new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8.newDecoder())), chunkSize);
+    }
+
+    private static int load(SuggestionService suggestionService, BufferedReader reader, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size should be positive [" + chunkSize + "]");
+        }
+
+        List<Word> chunk = new ArrayList<>(chunkSize);
+        int count = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            chunk.add(parse(line, lineNumber));
+            count++;
+
+            if (chunk.size() == chunkSize) {
+                suggestionService.addWords(chunk);
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            suggestionService.addWords(chunk);
+        }
+
+        return count;
+    }
+
+    private static Word parse(String line, int lineNumber) throws IOException {
+        int separator = line.lastIndexOf('\t');
+
+        if (separator < 0) {
+            return new Word(line, 0);
+        }
+
+        try {
+            return new Word(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid popularity index at line [" + lineNumber + "]: " + line, e);
+        }
+    }
+}
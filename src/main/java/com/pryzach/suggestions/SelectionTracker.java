@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions;
+
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.MappedSuggestionServiceImpl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Makes ranking follow what users actually choose. Selections of suggested words are counted with
+ * {@link #select(String)}, which is cheap enough to be called on every event from many threads: every word has its own
+ * {@link java.util.concurrent.atomic.LongAdder}, so threads selecting the same word don't contend either.
+ *
+ * {@link #rerank()} (called directly or scheduled with {@link #schedule(java.util.concurrent.ScheduledExecutorService, long, java.util.concurrent.TimeUnit)})
+ * folds counted selections into popularity of the words:
+ *
+ * <pre>
+ * score = score * decay + selections since last re-rank
+ * popularityIndex = popularity index word had when it was selected first + score
+ * </pre>
+ *
+ * Decay 1 keeps selections forever, lower decay makes old selections fade away, so words which are not chosen any more
+ * get back to their original popularity. Words are updated one by one with {@link com.pryzach.suggestions.service.SuggestionService#updatePopularity(com.pryzach.suggestions.model.Word)},
+ * so queries keep running while re-rank is in progress: every engine which supports updates publishes them as immutable
+ * snapshots, so suggestions are never blocked by re-rank. Read only engines (memory mapped index) are rejected.
+ *
+ * Selections counted while re-rank is in progress may be folded in the next re-rank, they are never lost
+ */
+public class SelectionTracker {
+    private final SuggestionService suggestionService;
+    private final double decay;
+
+    private final ConcurrentMap<String, Selections> selections = new ConcurrentHashMap<>();
+
+    /**
+     * @param suggestionService service which words are selected
+     * @param decay how much of the score is kept on every re-rank, from 0 (only last period counts) to 1 (no decay)
+     * @throws IllegalArgumentException if decay is out of range or service is read only
+     */
+    public SelectionTracker(SuggestionService suggestionService, double decay) {
+        if (decay < 0 || decay > 1) {
+            throw new IllegalArgumentException("Decay should be between 0 and 1 [" + decay + "]");
+        }
+
+        if (suggestionService instanceof MappedSuggestionServiceImpl) {
+            throw new IllegalArgumentException("Memory mapped index is read only, its ranking can't be changed");
+        }
+
+        this.suggestionService = suggestionService;
+        this.decay = decay;
+    }
+
+    /**
+     * Counts selection of suggested word
+     *
+     * @param name exact name of the selected word
+     */
+    public void select(String name) {
+        while (true) {
+            Selections selections = this.selections.get(name);
+
+            if (selections == null) {
+                Selections created = new Selections();
+                selections = this.selections.putIfAbsent(name, created);
+
+                if (selections == null) {
+                    selections = created;
+                }
+            }
+
+            selections.count.increment();
+
+            if (!selections.removed) {
+                return;
+            }
+
+            // re-rank is dropping these selections, selection is counted by the ones which replace them
+            selections.count.decrement();
+        }
+    }
+
+    /**
+     * Folds selections counted since last re-rank into popularity of the words
+     *
+     * @return amount of words which popularity was changed
+     */
+    public synchronized int rerank() {
+        int updated = 0;
+
+        for (Iterator<Map.Entry<String, Selections>> iterator = this.selections.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Selections> entry = iterator.next();
+            Selections selections = entry.getValue();
+
+            if (selections.popularityIndex == null) {
+                Word word = this.suggestionService.getWord(entry.getKey());
+
+                if (word == null) {
+                    // not a word of the dictionary (or already removed)
+                    iterator.remove();
+                    continue;
+                }
+
+                selections.popularityIndex = word.getPopularityIndex();
+                selections.rankedPopularityIndex = word.getPopularityIndex();
+            }
+
+            // count is never reset, so selections counted meanwhile are folded next time instead of being lost
+            long count = selections.count.sum();
+            selections.score = selections.score * this.decay + (count - selections.folded);
+            selections.folded = count;
+
+            long score = Math.round(selections.score);
+            int popularityIndex = (int) Math.min(Integer.MAX_VALUE, selections.popularityIndex + score);
+
+            if (popularityIndex != selections.rankedPopularityIndex) {
+                if (!this.suggestionService.updatePopularity(new Word(entry.getKey(), popularityIndex))) {
+                    iterator.remove();
+                    continue;
+                }
+
+                selections.rankedPopularityIndex = popularityIndex;
+                updated++;
+            }
+
+            if (score == 0 && selections.count.sum() == selections.folded) {
+                // word is back to its original popularity, nothing to track until it is selected again. Selection which
+                // sees removed flag takes its count back, selection which doesn't is seen by the second check
+                selections.removed = true;
+
+                if (selections.count.sum() == selections.folded) {
+                    iterator.remove();
+                } else {
+                    selections.removed = false;
+                }
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * Schedules periodic re-rank
+     *
+     * @param executor executor to re-rank on
+     * @param period period between re-ranks, decay is applied once per period
+     * @param unit period time unit
+     * @return scheduled re-rank, cancel it to stop
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                rerank();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Selections of the word
+     */
+    private static final class Selections {
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Set by re-rank before selections are dropped, so concurrent selection isn't counted by dropped ones
+         */
+        private volatile boolean removed;
+
+        /**
+         * Popularity index word had when it was selected first, null until first re-rank. This and the rest of the fields
+         * are accessed by re-rank only
+         */
+        private Integer popularityIndex;
+        private int rankedPopularityIndex;
+        private long folded;
+        private double score;
+
+        private Selections() {
+        }
+    }
+}
@@ -16,9 +16,18 @@
 
 package com.pryzach.suggestions;
 
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionEngine;
 import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.CachingSuggestionServiceImpl;
+import com.pryzach.suggestions.service.impl.MappedSuggestionServiceImpl;
+import com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl;
+import com.pryzach.suggestions.service.impl.SortedArraySuggestionServiceImpl;
 import com.pryzach.suggestions.service.impl.SuggestionServiceImpl;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * Standard Factory patters
  */
@@ -27,6 +36,63 @@ public class SuggestionFactory {
      * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance
      */
     public static SuggestionService getSuggestionService() {
-        return new SuggestionServiceImpl();
+        return getSuggestionService(SuggestionEngine.PREFIX_CACHE);
+    }
+
+    /**
+     * @param engine engine which should back returned service
+     * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     */
+    public static SuggestionService getSuggestionService(SuggestionEngine engine) {
+        switch (engine) {
+            case RADIX_TREE:
+                return new RadixTreeSuggestionServiceImpl();
+            case SORTED_ARRAY:
+                return new SortedArraySuggestionServiceImpl();
+            default:
+                return new SuggestionServiceImpl();
+        }
+    }
+
+    /**
+     * @param configuration engine and settings of returned service, see {@link com.pryzach.suggestions.constants.SuggestionConfiguration#builder()}
+     * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     */
+    public static SuggestionService getSuggestionService(SuggestionConfiguration configuration) {
+        switch (configuration.getEngine()) {
+            case RADIX_TREE:
+                return new RadixTreeSuggestionServiceImpl(configuration);
+            case SORTED_ARRAY:
+                return new SortedArraySuggestionServiceImpl(configuration);
+            default:
+                return new SuggestionServiceImpl(configuration);
+        }
+    }
+
+    /**
+     * @param suggestionService service to cache suggestions of
+     * @param maximumSize maximal amount of cached selectors
+     * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance which caches suggestions of hot selectors
+     */
+    public static SuggestionService getCachingSuggestionService(SuggestionService suggestionService, int maximumSize) {
+        return new CachingSuggestionServiceImpl(suggestionService, maximumSize);
+    }
+
+    /**
+     * @param file index file saved with {@link com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl#save(java.nio.file.Path)}
+     * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance with all words of the index
+     * @throws IOException if file can't be read or isn't an index file
+     */
+    public static SuggestionService loadSuggestionService(Path file) throws IOException {
+        return RadixTreeSuggestionServiceImpl.load(file);
+    }
+
+    /**
+     * @param file index file saved with {@link com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl#save(java.nio.file.Path)}
+     * @return new read only {@link com.pryzach.suggestions.service.SuggestionService} instance served straight from memory mapped file
+     * @throws IOException if file can't be read or isn't an index file
+     */
+    public static SuggestionService mapSuggestionService(Path file) throws IOException {
+        return new MappedSuggestionServiceImpl(file);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.constants;
+
+import com.pryzach.suggestions.metrics.SuggestionMetrics;
+
+/**
+ * Immutable configuration of one suggestion engine instance, so several dictionaries with different size and latency
+ * tradeoffs can live in one JVM. Built with {@link #builder()}, every setting not set keeps its default:
+ *
+ * <pre>
+ * SuggestionConfiguration configuration = SuggestionConfiguration.builder()
+ *         .engine(SuggestionEngine.PREFIX_CACHE)
+ *         .prefixDepth(4)
+ *         .bucketCapacity(1000)
+ *         .build();
+ * </pre>
+ *
+ * Settings which don't apply to chosen engine are ignored, except for RTL direction, which engines without RTL index reject
+ */
+public final class SuggestionConfiguration {
+    private final SuggestionEngine engine;
+    private final TextDirection direction;
+    private final int minLength;
+    private final int prefixDepth;
+    private final int bucketCapacity;
+    private final long memoryBudget;
+    private final int topSize;
+    private final SuggestionMetrics metrics;
+
+    private SuggestionConfiguration(Builder builder) {
+        this.engine = builder.engine;
+        this.direction = builder.direction;
+        this.minLength = builder.minLength;
+        this.prefixDepth = builder.prefixDepth;
+        this.bucketCapacity = builder.bucketCapacity;
+        this.memoryBudget = builder.memoryBudget;
+        this.topSize = builder.topSize;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * @return new builder with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return engine which backs the service, {@link com.pryzach.suggestions.constants.SuggestionEngine#PREFIX_CACHE} by default
+     */
+    public SuggestionEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return text direction of the dictionary, {@link com.pryzach.suggestions.constants.TextDirection#LTR} by default
+     */
+    public TextDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return minimal selector length after which matches would be offered, 1 by default
+     */
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @return length of the longest cached prefix of prefix cache engine, 6 by default (average english word length + 1)
+     */
+    public int getPrefixDepth() {
+        return prefixDepth;
+    }
+
+    /**
+     * @return maximal amount of best words kept for every prefix shorter than prefix depth, unbounded by default
+     */
+    public int getBucketCapacity() {
+        return bucketCapacity;
+    }
+
+    /**
+     * @return estimated heap, in bytes, prefix cache engine trims its index to, unbounded by default
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return amount of best words every radix tree node keeps, 10 by default
+     */
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * @return metrics suggestions and indexing are recorded into, {@link com.pryzach.suggestions.metrics.SuggestionMetrics#NOOP} by default
+     */
+    public SuggestionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Builder of {@link com.pryzach.suggestions.constants.SuggestionConfiguration}, not thread safe
+     */
+    public static final class Builder {
+        private SuggestionEngine engine = SuggestionEngine.PREFIX_CACHE;
+        private TextDirection direction = TextDirection.LTR;
+        private int minLength = 1;
+        private int prefixDepth = 6;
+        private int bucketCapacity = Integer.MAX_VALUE;
+        private long memoryBudget = Long.MAX_VALUE;
+        private int topSize = 10;
+        private SuggestionMetrics metrics = SuggestionMetrics.NOOP;
+
+        private Builder() {
+        }
+
+        /**
+         * @param engine engine which backs the service
+         * @return this builder
+         */
+        public Builder engine(SuggestionEngine engine) {
+            if (engine == null) {
+                throw new IllegalArgumentException("Engine should be set");
+            }
+
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * @param direction text direction of the dictionary. RTL dictionaries are supported by
+         *                  {@link com.pryzach.suggestions.constants.SuggestionEngine#PREFIX_CACHE} engine, they take
+         *                  plain {@link com.pryzach.suggestions.model.Word} words and {@link java.lang.String} selectors
+         *                  in display order and suggest words in display order
+         * @return this builder
+         */
+        public Builder direction(TextDirection direction) {
+            if (direction == null) {
+                throw new IllegalArgumentException("Direction should be set");
+            }
+
+            this.direction = direction;
+            return this;
+        }
+
+        /**
+         * @param minLength minimal selector length after which matches would be offered (min 1)
+         * @return this builder
+         */
+        public Builder minLength(int minLength) {
+            if (minLength <= 0) {
+                throw new IllegalArgumentException("Min length should be positive [" + minLength + "]");
+            }
+
+            this.minLength = minLength;
+            return this;
+        }
+
+        /**
+         * @param prefixDepth length of the longest cached prefix. Have a lot of long words - set higher, otherwise - set lower
+         * @return this builder
+         */
+        public Builder prefixDepth(int prefixDepth) {
+            if (prefixDepth <= 0) {
+                throw new IllegalArgumentException("Prefix depth should be positive [" + prefixDepth + "]");
+            }
+
+            this.prefixDepth = prefixDepth;
+            return this;
+        }
+
+        /**
+         * @param bucketCapacity maximal amount of best words kept for every prefix shorter than prefix depth, limits
+         *                       above it get at most this many suggestions for such prefixes
+         * @return this builder
+         */
+        public Builder bucketCapacity(int bucketCapacity) {
+            if (bucketCapacity <= 0) {
+                throw new IllegalArgumentException("Bucket capacity should be positive [" + bucketCapacity + "]");
+            }
+
+            this.bucketCapacity = bucketCapacity;
+            return this;
+        }
+
+        /**
+         * @param memoryBudget estimated heap, in bytes, index may take. Index over budget caps prefix lists and caches
+         *                     shorter prefixes, selector lengths which are asked less often are trimmed first
+         * @return this builder
+         */
+        public Builder memoryBudget(long memoryBudget) {
+            if (memoryBudget <= 0) {
+                throw new IllegalArgumentException("Memory budget should be positive [" + memoryBudget + "]");
+            }
+
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * @param topSize amount of best words every radix tree node keeps
+         * @return this builder
+         */
+        public Builder topSize(int topSize) {
+            if (topSize <= 0) {
+                throw new IllegalArgumentException("Top size should be positive [" + topSize + "]");
+            }
+
+            this.topSize = topSize;
+            return this;
+        }
+
+        /**
+         * @param metrics metrics suggestions and indexing are recorded into
+         * @return this builder
+         */
+        public Builder metrics(SuggestionMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("Metrics should be set, use SuggestionMetrics.NOOP to disable them");
+            }
+
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @return new configuration with current settings
+         */
+        public SuggestionConfiguration build() {
+            return new SuggestionConfiguration(this);
+        }
+    }
+}
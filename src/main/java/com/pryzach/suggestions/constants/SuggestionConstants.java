@@ -17,22 +17,28 @@
 package com.pryzach.suggestions.constants;
 
 /**
- * Suggestion service constants. In future maybe better be replaced with some kind of configuration
- * to be set upon {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl} construction
+ * Suggestion service constants. Settings of the engines are per instance, see
+ * {@link com.pryzach.suggestions.constants.SuggestionConfiguration}
  */
 public class SuggestionConstants {
     /**
      * Separator is used to serialize/de-serialize words in cache
+     *
+     * @deprecated cache is no longer serialized into strings, value is ignored
      */
-    public static String WORDS_CACHE_SEPARATOR = "|";
+    @Deprecated
+    public static final String WORDS_CACHE_SEPARATOR = "|";
 
     /**
      * Limit, in bytes, on how long cache string can be
+     *
+     * @deprecated cache is no longer serialized into strings, value is ignored
      */
-    public static int CACHE_STRING_LENGTH_LIMIT = 0;
+    @Deprecated
+    public static final int CACHE_STRING_LENGTH_LIMIT = 0;
 
     /**
      * Helper empty array used in {@link java.util.Set#toArray(Object[])}
      */
-    public static String[] TO_STRING_ARRAY_HELPER = new String[] {};
+    public static final String[] TO_STRING_ARRAY_HELPER = new String[] {};
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.constants;
+
+/**
+ * Available suggestion engines, see {@link com.pryzach.suggestions.SuggestionFactory#getSuggestionService(SuggestionEngine)}
+ */
+public enum SuggestionEngine {
+    /**
+     * Prefix map based engine, {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+     */
+    PREFIX_CACHE,
+
+    /**
+     * Compressed radix tree based engine, {@link com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl}
+     */
+    RADIX_TREE,
+
+    /**
+     * Sorted lexicon based engine, {@link com.pryzach.suggestions.service.impl.SortedArraySuggestionServiceImpl}
+     */
+    SORTED_ARRAY
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.constants;
+
+/**
+ * Text direction of the dictionary, see {@link com.pryzach.suggestions.constants.SuggestionConfiguration.Builder#direction(TextDirection)}
+ */
+public enum TextDirection {
+    /**
+     * Left to right, words are matched by their beginning
+     */
+    LTR,
+
+    /**
+     * Right to left, words are matched by their end, the same way as {@link com.pryzach.suggestions.model.WordRTL}
+     * words are, but words and suggestions are kept in display order
+     */
+    RTL
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative long values (latencies in nanoseconds, sizes), in the spirit of HdrHistogram.
+ * Values below 64 are counted exactly, bigger values go into 32 linear sub-buckets of their power of two, so every
+ * reported value is within ~3% of the recorded one while the whole range of long takes fixed 15KB.
+ *
+ * Recording increments bucket of the value, count and total are striped adders and max is compared before it is
+ * updated, so threads share no single counter and histogram can be called on hot paths from many threads
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted exactly
+     */
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    private static final int EXACT_BITS = SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EXACT + (63 - EXACT_BITS) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+
+        this.counts.incrementAndGet(index(value));
+        this.count.increment();
+        this.total.add(value);
+
+        long max;
+        while (value > (max = this.max.get()) && !this.max.compareAndSet(max, value)) {
+            // retrying until either this value is max or other thread recorded bigger one
+        }
+    }
+
+    /**
+     * @return amount of recorded values
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return biggest recorded value, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return mean of recorded values, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = this.count.sum();
+
+        return count == 0 ? 0 : (double) this.total.sum() / count;
+    }
+
+    /**
+     * @param percentile percentile, from 0 to 100
+     * @return value which given percentage of recorded values doesn't exceed (within histogram precision), 0 if nothing
+     * was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            count += this.counts.get(i);
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+
+        return 0;
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+
+        return EXACT + (magnitude - EXACT_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return biggest value counted in the bucket
+     */
+    static long highestValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+
+        int magnitude = (index - EXACT) / SUB_BUCKETS + EXACT_BITS;
+        long subBucket = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
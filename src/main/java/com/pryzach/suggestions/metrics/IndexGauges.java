@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+/**
+ * Current size of the index. Values are read without locking while index may be updated, so they are approximate
+ */
+public interface IndexGauges {
+    /**
+     * @return amount of indexed words
+     */
+    public int getWordCount();
+
+    /**
+     * @return amount of cached prefixes (buckets)
+     */
+    public int getPrefixCount();
+
+    /**
+     * @return amount of word references in all buckets together
+     */
+    public long getPrefixEntryCount();
+
+    /**
+     * @return estimated heap taken by the index, in bytes
+     */
+    public long getIndexMemory();
+}
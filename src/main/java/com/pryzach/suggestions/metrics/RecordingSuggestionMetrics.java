@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link com.pryzach.suggestions.metrics.SuggestionMetrics} which keeps counters per suggest path and histograms of
+ * suggest latency, bucket size and indexing latency in memory. Everything can be read directly or through JMX, see
+ * {@link #register(String)}
+ */
+public class RecordingSuggestionMetrics implements SuggestionMetrics, SuggestionMetricsMXBean {
+    /**
+     * JMX domain metrics are registered under
+     */
+    public static final String DOMAIN = "com.pryzach.suggestions";
+
+    private final LongAdder[] pathCounts = new LongAdder[SuggestPath.values().length];
+
+    private final Histogram suggestLatency = new Histogram();
+    private final Histogram scannedLatency = new Histogram();
+    private final Histogram bucketSize = new Histogram();
+    private final Histogram indexLatency = new Histogram();
+    private final LongAdder indexedWordCount = new LongAdder();
+
+    private volatile IndexGauges gauges;
+
+    public RecordingSuggestionMetrics() {
+        for (int i = 0; i < this.pathCounts.length; i++) {
+            this.pathCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void suggested(SuggestPath path, int bucketSize, long nanos) {
+        this.pathCounts[path.ordinal()].increment();
+        this.suggestLatency.record(nanos);
+        this.bucketSize.record(bucketSize);
+
+        if (path == SuggestPath.SCANNED) {
+            this.scannedLatency.record(nanos);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void indexed(int words, long nanos) {
+        this.indexedWordCount.add(words);
+        this.indexLatency.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bind(IndexGauges gauges) {
+        this.gauges = gauges;
+    }
+
+    /**
+     * Registers metrics in platform MBean server
+     *
+     * @param name name of the dictionary, to tell several engines apart
+     * @return name metrics are registered under
+     * @throws JMException if name is invalid or already taken
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=SuggestionMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+        return objectName;
+    }
+
+    /**
+     * @param path suggest path
+     * @return amount of suggestions which took given path
+     */
+    public long getCount(SuggestPath path) {
+        return this.pathCounts[path.ordinal()].sum();
+    }
+
+    /**
+     * @return latencies of all suggestions, in nanoseconds
+     */
+    public Histogram getSuggestLatency() {
+        return this.suggestLatency;
+    }
+
+    /**
+     * @return latencies of suggestions which scanned prefix list, in nanoseconds
+     */
+    public Histogram getScannedLatency() {
+        return this.scannedLatency;
+    }
+
+    /**
+     * @return sizes of the buckets selectors were looked up in
+     */
+    public Histogram getBucketSize() {
+        return this.bucketSize;
+    }
+
+    /**
+     * @return latencies of indexed batches, in nanoseconds
+     */
+    public Histogram getIndexLatency() {
+        return this.indexLatency;
+    }
+
+    @Override
+    public long getSuggestCount() {
+        return this.suggestLatency.getCount();
+    }
+
+    @Override
+    public long getCachedCount() {
+        return getCount(SuggestPath.CACHED);
+    }
+
+    @Override
+    public long getScannedCount() {
+        return getCount(SuggestPath.SCANNED);
+    }
+
+    @Override
+    public long getMissedCount() {
+        return getCount(SuggestPath.MISSED);
+    }
+
+    @Override
+    public double getSuggestLatencyMean() {
+        return this.suggestLatency.getMean();
+    }
+
+    @Override
+    public long getSuggestLatencyMedian() {
+        return this.suggestLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getSuggestLatency99() {
+        return this.suggestLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getSuggestLatency999() {
+        return this.suggestLatency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getSuggestLatencyMax() {
+        return this.suggestLatency.getMax();
+    }
+
+    @Override
+    public long getScannedLatency99() {
+        return this.scannedLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getBucketSizeMedian() {
+        return this.bucketSize.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getBucketSize99() {
+        return this.bucketSize.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getBucketSizeMax() {
+        return this.bucketSize.getMax();
+    }
+
+    @Override
+    public long getIndexCount() {
+        return this.indexLatency.getCount();
+    }
+
+    @Override
+    public long getIndexedWordCount() {
+        return this.indexedWordCount.sum();
+    }
+
+    @Override
+    public long getIndexLatencyMedian() {
+        return this.indexLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getIndexLatency99() {
+        return this.indexLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getIndexLatencyMax() {
+        return this.indexLatency.getMax();
+    }
+
+    @Override
+    public int getWordCount() {
+        IndexGauges gauges = this.gauges;
+
+        return gauges == null ? 0 : gauges.getWordCount();
+    }
+
+    @Override
+    public int getPrefixCount() {
+        IndexGauges gauges = this.gauges;
+
+        return gauges == null ? 0 : gauges.getPrefixCount();
+    }
+
+    @Override
+    public long getPrefixEntryCount() {
+        IndexGauges gauges = this.gauges;
+
+        return gauges == null ? 0 : gauges.getPrefixEntryCount();
+    }
+
+    @Override
+    public long getIndexMemory() {
+        IndexGauges gauges = this.gauges;
+
+        return gauges == null ? 0 : gauges.getIndexMemory();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+/**
+ * Path suggestion took through the prefix cache of {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+ */
+public enum SuggestPath {
+    /**
+     * Selector not longer than max caching length, suggestions are the head of its prefix list
+     */
+    CACHED,
+
+    /**
+     * Selector longer than max caching length, prefix list of its longest cached prefix is scanned for matches
+     */
+    SCANNED,
+
+    /**
+     * Nothing is indexed for selector (or selector is too short), nothing is looked at
+     */
+    MISSED
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+/**
+ * Pluggable instrumentation of suggestion engine. Engine calls it on every suggestion and every indexed batch, so
+ * implementations have to be cheap and thread safe. {@link #NOOP} is used by default: engine doesn't even read the
+ * clock then, so disabled metrics cost nothing
+ */
+public interface SuggestionMetrics {
+    /**
+     * Metrics which record nothing
+     */
+    public static final SuggestionMetrics NOOP = new SuggestionMetrics() {
+        @Override
+        public void suggested(SuggestPath path, int bucketSize, long nanos) {
+        }
+
+        @Override
+        public void indexed(int words, long nanos) {
+        }
+
+        @Override
+        public void bind(IndexGauges gauges) {
+        }
+    };
+
+    /**
+     * Records one suggestion
+     *
+     * @param path path suggestion took
+     * @param bucketSize amount of words in the bucket selector was looked up in (0 if missed)
+     * @param nanos time suggestion took
+     */
+    public void suggested(SuggestPath path, int bucketSize, long nanos);
+
+    /**
+     * Records one batch of added words
+     *
+     * @param words amount of words in the batch
+     * @param nanos time indexing took
+     */
+    public void indexed(int words, long nanos);
+
+    /**
+     * Called once by engine which uses these metrics, so index size can be reported as well
+     *
+     * @param gauges current size of the index
+     */
+    public void bind(IndexGauges gauges);
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+/**
+ * JMX view of {@link com.pryzach.suggestions.metrics.RecordingSuggestionMetrics}. Latencies are in nanoseconds
+ */
+public interface SuggestionMetricsMXBean {
+    public long getSuggestCount();
+
+    public long getCachedCount();
+
+    public long getScannedCount();
+
+    public long getMissedCount();
+
+    public double getSuggestLatencyMean();
+
+    public long getSuggestLatencyMedian();
+
+    public long getSuggestLatency99();
+
+    public long getSuggestLatency999();
+
+    public long getSuggestLatencyMax();
+
+    /**
+     * @return 99th percentile of the latency of suggestions which scanned prefix list
+     */
+    public long getScannedLatency99();
+
+    public long getBucketSizeMedian();
+
+    public long getBucketSize99();
+
+    public long getBucketSizeMax();
+
+    public long getIndexCount();
+
+    public long getIndexedWordCount();
+
+    public long getIndexLatencyMedian();
+
+    public long getIndexLatency99();
+
+    public long getIndexLatencyMax();
+
+    public int getWordCount();
+
+    public int getPrefixCount();
+
+    public long getPrefixEntryCount();
+
+    public long getIndexMemory();
+}
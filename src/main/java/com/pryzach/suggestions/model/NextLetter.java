@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.model;
+
+/**
+ * Letter which can follow selector, together with the branch of the index it leads to: how many words are there and
+ * popularity index of the best of them
+ */
+public class NextLetter {
+    private final String letter;
+    private final int count;
+    private final int popularityIndex;
+
+    /**
+     * Default constructor
+     *
+     * @param letter case folded letter
+     * @param count amount of words starting with selector followed by this letter
+     * @param popularityIndex popularity index of the best of these words
+     */
+    public NextLetter(String letter, int count, int popularityIndex) {
+        this.letter = letter;
+        this.count = count;
+        this.popularityIndex = popularityIndex;
+    }
+
+    /**
+     * @return case folded letter
+     */
+    public String getLetter() {
+        return letter;
+    }
+
+    /**
+     * @return amount of words starting with selector followed by this letter
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return popularity index of the best word starting with selector followed by this letter
+     */
+    public int getPopularityIndex() {
+        return popularityIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NextLetter nextLetter = (NextLetter) o;
+
+        if (count != nextLetter.count) return false;
+        if (popularityIndex != nextLetter.popularityIndex) return false;
+        if (!letter.equals(nextLetter.letter)) return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = letter.hashCode();
+        result = 31 * result + count;
+        result = 31 * result + popularityIndex;
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return letter + "[" + count + ", " + popularityIndex + "]";
+    }
+}
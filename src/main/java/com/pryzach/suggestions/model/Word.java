@@ -16,8 +16,6 @@
 
 package com.pryzach.suggestions.model;
 
-import com.pryzach.suggestions.constants.SuggestionConstants;
-
 /**
  * Words model. Implements {@link java.lang.Comparable} to be used in {@link java.util.SortedSet} for efficient ranking
  */
@@ -32,8 +30,7 @@ public class Word implements Comparable {
      * @param popularityIndex popularity index (influences order)
      */
     public Word(String name, int popularityIndex) {
-        // cleaning all possible conflicts with internal separator
-        this.name = name.replace(SuggestionConstants.WORDS_CACHE_SEPARATOR, "|");
+        this.name = name;
         this.popularityIndex = popularityIndex;
     }
 
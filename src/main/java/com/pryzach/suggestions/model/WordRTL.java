@@ -1,7 +1,9 @@
 package com.pryzach.suggestions.model;
 
 /**
- * {@link com.pryzach.suggestions.model.Word} override which supports RTL languages
+ * {@link com.pryzach.suggestions.model.Word} override which supports RTL languages: name is kept reversed, so it is
+ * matched by its end. Prefix cache engine can keep RTL dictionary of plain words instead, see
+ * {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getDirection()}
  */
 public class WordRTL extends Word {
     /**
@@ -16,11 +16,14 @@
 
 package com.pryzach.suggestions.service;
 
+import com.pryzach.suggestions.model.NextLetter;
 import com.pryzach.suggestions.model.Word;
 import com.pryzach.suggestions.model.WordRTL;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Suggestion service, matches added words {@link #addWord(com.pryzach.suggestions.model.Word)} via {@link #suggest(String, String, int)}
@@ -40,6 +43,29 @@ public interface SuggestionService {
      */
     public void addWord(Word word);
 
+    /**
+     * @param name exact name of the word
+     * @return added word with exactly the same name (and its current popularity index) or null if there is no such word
+     */
+    public Word getWord(String name);
+
+    /**
+     * Removes word from the suggestion engine. Only prefixes of the word are touched
+     *
+     * @param word word to remove, word with exactly the same name is removed whatever its popularity index is
+     * @return true if word was removed, false if there was no such word
+     */
+    public boolean removeWord(Word word);
+
+    /**
+     * Changes popularity index of already added word. Unlike {@link #addWord(com.pryzach.suggestions.model.Word)}, word
+     * can become less popular as well. Only prefixes of the word are touched
+     *
+     * @param word word with exactly the same name as added one and new popularity index
+     * @return true if word was updated, false if there was no such word
+     */
+    public boolean updatePopularity(Word word);
+
     /**
      * Suggests words, returns:
      *  "word&lt;separator&gt;word&lt;separator&gt;"
@@ -61,6 +87,60 @@ public interface SuggestionService {
      */
     public String[] suggest(String selector, int limit);
 
+    /**
+     * Suggests words into caller supplied buffer, for hot paths which reuse buffer between calls. Selector is compared
+     * case insensitively char by char, so nothing is allocated for it (mutable selectors like
+     * {@link java.lang.StringBuilder} can be reused as well). Buffer is filled from the start, the rest is left as is
+     *
+     * @param selector word to which we suggest match
+     * @param suggestions buffer for words suggestions, its length is the limit to how much matches to send back
+     * @return amount of suggestions written into buffer
+     */
+    public int suggest(CharSequence selector, String[] suggestions);
+
+    /**
+     * Suggests words for many selectors at once, split across {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+     * Same as {@link #suggest(String, int)} for every selector, but selectors sharing prefix share look up
+     *
+     * @param selectors words to which we suggest matches
+     * @param limits limit to how much matches to send back, for every selector
+     * @return array with words suggestions for every selector, in the same order as selectors
+     */
+    public String[][] suggest(String[] selectors, int[] limits);
+
+    /**
+     * Suggests words for many selectors at once, split across given executor.
+     * Same as {@link #suggest(String, int)} for every selector, but selectors sharing prefix share look up
+     *
+     * @param selectors words to which we suggest matches
+     * @param limits limit to how much matches to send back, for every selector
+     * @param executor executor (or fork join pool) to run the batch on
+     * @return array with words suggestions for every selector, in the same order as selectors
+     */
+    public String[][] suggest(String[] selectors, int[] limits, Executor executor);
+
+    /**
+     * Suggests words without blocking caller, on virtual threads if JVM has them and on
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()} otherwise. Same as {@link #suggest(String, int)}, but
+     * concurrent requests for the same case folded selector and limit share one look up
+     *
+     * @param selector word to which we suggest match
+     * @param limit limit to how much matches to send back
+     * @return future array with words suggestions
+     */
+    public CompletableFuture<String[]> suggestAsync(String selector, int limit);
+
+    /**
+     * Suggests words without blocking caller, on given executor. Same as {@link #suggest(String, int)}, but concurrent
+     * requests for the same case folded selector and limit share one look up
+     *
+     * @param selector word to which we suggest match
+     * @param limit limit to how much matches to send back
+     * @param executor executor to look suggestions up on, request which joins look up in progress doesn't use it
+     * @return future array with words suggestions
+     */
+    public CompletableFuture<String[]> suggestAsync(String selector, int limit, Executor executor);
+
     /**
      * Suggests words, returns:
      *  [word, word]
@@ -86,6 +166,16 @@ public interface SuggestionService {
      */
     public String suggest(WordRTL selector, String separator, int limit);
 
+    /**
+     * Suggests every letter which can follow selector, read straight from the index rather than from suggested words,
+     * so letters of the words beyond any limit are there too. Every letter comes with amount of words it leads to and
+     * popularity index of the best of them, letters are in ranking order of their best words
+     *
+     * @param selector word to which we suggest match
+     * @return array of next letter suggestions, letters are case folded
+     */
+    public NextLetter[] suggestNextLetter(String selector);
+
     /**
      * Suggests next letters, returns: "letter&lt;separator&gt;letter&lt;separator&gt;"
      *
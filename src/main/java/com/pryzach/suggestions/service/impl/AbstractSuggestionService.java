@@ -0,0 +1,414 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.constants.SuggestionConstants;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.model.WordRTL;
+import com.pryzach.suggestions.service.SuggestionService;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Base {@link com.pryzach.suggestions.service.SuggestionService} implementation. Holds serialization, RTL and next letter
+ * overloads which are the same for every engine, so engines only have to implement indexing and {@link #suggest(String, int)}
+ */
+public abstract class AbstractSuggestionService implements SuggestionService {
+    /**
+     * Minimal amount of selectors handled by one batch task
+     */
+    private static final int BATCH_CHUNK_SIZE = 16;
+
+    static final NextLetter[] EMPTY_NEXT_LETTERS = new NextLetter[] {};
+
+    /**
+     * Executor of asynchronous suggestions: virtual thread per task if JVM has them, common fork join pool otherwise
+     */
+    private static final Executor ASYNC_EXECUTOR = asyncExecutor();
+
+    /**
+     * Shared suggestions are copied for every request, as returned suggestions can be changed by caller
+     */
+    private static final Function<String[], String[]> COPY = new Function<String[], String[]>() {
+        @Override
+        public String[] apply(String[] suggestions) {
+            return suggestions.clone();
+        }
+    };
+
+    /**
+     * Asynchronous suggestions being looked up, requests for the same selector and limit join them
+     */
+    private final ConcurrentMap<Request, CompletableFuture<String[]>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Virtual threads are looked up reflectively, so library still runs on Java 8
+     */
+    private static Executor asyncExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWord(Word word) {
+        addWords(Arrays.asList(word));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[][] suggest(String[] selectors, int[] limits) {
+        return suggest(selectors, limits, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Selectors are sorted by case folded value and split into continuous chunks, one task per chunk. Inside of the chunk
+     * equal selectors are looked up once and selector which extends already suggested one is served by filtering its
+     * suggestions, as long as they hold every match of the shorter selector (see {@link #holdsEveryMatch(String, String[], int)})
+     */
+    @Override
+    public String[][] suggest(final String[] selectors, final int[] limits, Executor executor) {
+        if (selectors.length != limits.length) {
+            throw new IllegalArgumentException("Selectors [" + selectors.length + "] and limits [" + limits.length + "] don't match");
+        }
+
+        final String[] keys = new String[selectors.length];
+        Integer[] order = new Integer[selectors.length];
+
+        for (int i = 0; i < selectors.length; i++) {
+            keys[i] = key(selectors[i]);
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return keys[i1].compareTo(keys[i2]);
+            }
+        });
+
+        final String[][] suggestions = new String[selectors.length][];
+        final int[] sorted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = order[i];
+        }
+
+        int chunkSize = Math.max(BATCH_CHUNK_SIZE, sorted.length / (4 * Runtime.getRuntime().availableProcessors()) + 1);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+        for (int from = 0; from < sorted.length; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(sorted.length, from + chunkSize);
+
+            tasks.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    suggest(selectors, keys, limits, sorted, chunkFrom, chunkTo, suggestions);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+
+        return suggestions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<String[]> suggestAsync(String selector, int limit) {
+        return suggestAsync(selector, limit, ASYNC_EXECUTOR);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Look up is keyed by case folded selector and limit and is forgotten as soon as it completes, so completed
+     * suggestions are never served to later requests
+     */
+    @Override
+    public CompletableFuture<String[]> suggestAsync(final String selector, final int limit, Executor executor) {
+        final Request request = new Request(key(selector), limit);
+        CompletableFuture<String[]> suggestions = this.inFlight.get(request);
+
+        if (suggestions == null) {
+            final CompletableFuture<String[]> lookup = new CompletableFuture<>();
+            suggestions = this.inFlight.putIfAbsent(request, lookup);
+
+            if (suggestions == null) {
+                suggestions = lookup;
+
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            // look up is forgotten before it completes, so requests which see it completed start a new one
+                            try {
+                                String[] suggestions = suggest(selector, limit);
+                                inFlight.remove(request, lookup);
+                                lookup.complete(suggestions);
+                            } catch (Throwable e) {
+                                inFlight.remove(request, lookup);
+                                lookup.completeExceptionally(e);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    this.inFlight.remove(request, lookup);
+                    lookup.completeExceptionally(e);
+                }
+            }
+        }
+
+        return suggestions.thenApply(COPY);
+    }
+
+    /**
+     * Suggests words for the chunk of sorted selectors
+     */
+    private void suggest(String[] selectors, String[] keys, int[] limits, int[] sorted, int from, int to, String[][] suggestions) {
+        // complete suggestions of the selectors which are prefixes of the current one, shortest first
+        Deque<String> completeKeys = new ArrayDeque<>();
+        Deque<String[]> complete = new ArrayDeque<>();
+
+        int i = from;
+        while (i < to) {
+            String key = keys[sorted[i]];
+
+            // equal selectors are looked up once, with the highest limit
+            int equalTo = i;
+            int limit = 0;
+            while (equalTo < to && keys[sorted[equalTo]].equals(key)) {
+                limit = Math.max(limit, limits[sorted[equalTo++]]);
+            }
+
+            while (!completeKeys.isEmpty() && !key.startsWith(completeKeys.peekLast())) {
+                completeKeys.pollLast();
+                complete.pollLast();
+            }
+
+            String[] result;
+            if (!complete.isEmpty() && limit > 0) {
+                result = filter(complete.peekLast(), selectors[sorted[i]], limit);
+            } else {
+                result = suggest(selectors[sorted[i]], limit);
+            }
+
+            // suggestions which hold every match can serve longer selectors
+            if (result.length > 0 && holdsEveryMatch(selectors[sorted[i]], result, limit)) {
+                completeKeys.addLast(key);
+                complete.addLast(result);
+            }
+
+            for (; i < equalTo; i++) {
+                int index = sorted[i];
+                suggestions[index] = result.length <= Math.max(0, limits[index]) ? result : Arrays.copyOf(result, Math.max(0, limits[index]));
+            }
+        }
+    }
+
+    private String[] filter(String[] suggestions, String selector, int limit) {
+        List<String> filtered = new ArrayList<>();
+
+        for (int i = 0; i < suggestions.length && filtered.size() < limit; i++) {
+            if (matches(suggestions[i], selector)) {
+                filtered.add(suggestions[i]);
+            }
+        }
+
+        return filtered.toArray(SuggestionConstants.TO_STRING_ARRAY_HELPER);
+    }
+
+    /**
+     * Tells if word suggested for shorter selector is suggested for the given one too, used to share look ups in batches
+     *
+     * @param name suggested word name
+     * @param selector word to which we suggest match
+     * @return true if name starts with selector, ignoring case
+     */
+    protected boolean matches(String name, String selector) {
+        return FoldedSelector.startsWith(name, selector);
+    }
+
+    /**
+     * Tells if suggestions hold every match of the selector, so selectors which extend it can be served by filtering
+     * them. Suggestions shorter than limit do, unless engine keeps only the best words of some prefixes
+     *
+     * @param selector word to which we suggest match
+     * @param suggestions suggestions of the selector
+     * @param limit limit suggestions were looked up with
+     * @return true if there are no other matches
+     */
+    protected boolean holdsEveryMatch(String selector, String[] suggestions, int limit) {
+        return suggestions.length < limit;
+    }
+
+    /**
+     * Tells how many times engine dropped matches of words which weren't changed, e.g. trimmed its index to fit memory
+     * budget. Caches can't invalidate only prefixes of changed words when it changes
+     *
+     * @return amount of such changes, 0 if engine never drops matches by itself
+     */
+    protected long trimCount() {
+        return 0;
+    }
+
+    /**
+     * Key selector is looked up by. Keys of selectors which extend given one start with its key, so batches and caches
+     * can share look ups
+     *
+     * @param selector word to which we suggest match
+     * @return case folded selector
+     */
+    protected String key(String selector) {
+        return FoldedSelector.fold(selector);
+    }
+
+    /**
+     * @param name suggested word name
+     * @param length length of the selector name was suggested for
+     * @return letter which follows selector in the name
+     */
+    protected char nextLetter(String name, int length) {
+        return name.charAt(length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WordRTL[] suggest(WordRTL selector, int limit) {
+        String[] suggestedWordsStringArray = this.suggest(selector.getName(), limit);
+        WordRTL[] suggestedWordsArray = new WordRTL[suggestedWordsStringArray.length];
+
+        for (int i = 0; i < suggestedWordsStringArray.length; i++) {
+            suggestedWordsArray[i] = new WordRTL(suggestedWordsStringArray[i], suggestedWordsStringArray.length - i);
+        }
+
+        return suggestedWordsArray;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String suggest(WordRTL selector, String separator, int limit) {
+        WordRTL[] suggestedWordsArray = this.suggest(selector, limit);
+
+        StringBuilder suggestedWordsString = new StringBuilder("");
+
+        for (int i = 0; i < suggestedWordsArray.length; i++) {
+            suggestedWordsString.append(suggestedWordsArray[i].getName());
+
+            if (i + 1 < suggestedWordsArray.length) {
+                suggestedWordsString.append(separator);
+            }
+        }
+
+        return suggestedWordsString.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String suggest(String selector, String separator, int limit) {
+        return String.join(separator, this.suggest(selector, limit));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] suggestNextLetter(String selector, String[] suggestedWords) {
+        Set<String> suggestedNextLetters = new LinkedHashSet<>();
+        int nextLetterPosition = selector.length();
+
+        for (int i = 0; i < suggestedWords.length; i++) {
+            if (suggestedWords[i].length() > nextLetterPosition) {
+                suggestedNextLetters.add(Character.toString(nextLetter(suggestedWords[i], nextLetterPosition)));
+            }
+
+        }
+
+        return suggestedNextLetters.toArray(SuggestionConstants.TO_STRING_ARRAY_HELPER);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String suggestNextLetter(String selector, String suggestedWords, String separator) {
+        return String.join(separator, this.suggestNextLetter(selector, suggestedWords.split("[" + separator + "]")));
+    }
+
+    /**
+     * Asynchronous suggestion request: case folded selector and limit
+     */
+    private static final class Request {
+        private final String key;
+        private final int limit;
+
+        private Request(String key, int limit) {
+            this.key = key;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Request request = (Request) o;
+
+            return limit == request.limit && key.equals(request.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + limit;
+        }
+    }
+}
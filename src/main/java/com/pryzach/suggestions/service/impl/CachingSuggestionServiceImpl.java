@@ -0,0 +1,446 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link com.pryzach.suggestions.service.SuggestionService} decorator which caches suggestions of hot selectors.
+ *
+ * Suggestions are cached by case folded selector, together with limit they were suggested for: request with the same
+ * or smaller limit (or any limit, if there were fewer suggestions than limit) is served from the cache. Cache is
+ * bounded and uses W-TinyLFU eviction, so selectors which are asked often stay cached while one-off selectors
+ * don't push them out.
+ *
+ * When words are added, removed or updated only suggestions of the selectors which these words start with (end with,
+ * for RTL dictionaries) are invalidated. Whole cache is dropped if decorated service trimmed its index meanwhile (see
+ * {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getMemoryBudget()}), as trimming changes suggestions
+ * of any selector.
+ *
+ * Cached suggestions are read from concurrent map without locking. Hits are recorded into per thread striped buffers
+ * which are replayed into eviction policy by whichever thread gets the lock, so hot selectors don't make readers
+ * contend. Buffers are lossy: hits recorded while buffer is full are dropped, which only makes popularity estimate a
+ * bit lower under heavy load.
+ *
+ * This implementation is as thread safe as decorated service is
+ */
+public class CachingSuggestionServiceImpl extends AbstractSuggestionService {
+    private static final int READ_BUFFER_SIZE = 32;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final SuggestionService suggestionService;
+    private final int maximumSize;
+
+    /**
+     * Cached suggestions, written only under lock, together with eviction policy
+     */
+    private final ConcurrentMap<String, Suggestions> data = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Eviction policy, guarded by lock
+     */
+    private final TinyLfuCache<String, Suggestions> cache;
+
+    private final ReadBuffer[] readBuffers;
+
+    /**
+     * Changed on every invalidation, so suggestions which were being looked up meanwhile aren't cached. Written under lock
+     */
+    private volatile long version;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param suggestionService service to cache suggestions of
+     * @param maximumSize maximal amount of cached selectors
+     */
+    public CachingSuggestionServiceImpl(SuggestionService suggestionService, int maximumSize) {
+        this.suggestionService = suggestionService;
+        this.maximumSize = maximumSize;
+
+        this.cache = new TinyLfuCache<>(maximumSize);
+
+        // power of two not smaller than amount of processors, so stripe is picked by masking thread id
+        this.readBuffers = new ReadBuffer[Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)];
+        for (int i = 0; i < this.readBuffers.length; i++) {
+            this.readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Invalidates cached suggestions of the selectors which added words start with. Whole cache is dropped if there are
+     * more added words than cached selectors or if decorated service trimmed its index
+     */
+    @Override
+    public void addWords(Collection<Word> words) {
+        long trimCount = trimCount();
+
+        this.suggestionService.addWords(words);
+
+        this.lock.lock();
+        try {
+            this.version++;
+            drainReadBuffers();
+
+            if (words.size() >= this.maximumSize || trimCount() != trimCount) {
+                this.cache.clear();
+                this.data.clear();
+                return;
+            }
+
+            for (Word word : words) {
+                invalidate(word);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Word getWord(String name) {
+        return this.suggestionService.getWord(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Invalidates cached suggestions of the selectors which removed word starts with
+     */
+    @Override
+    public boolean removeWord(Word word) {
+        if (!this.suggestionService.removeWord(word)) {
+            return false;
+        }
+
+        this.lock.lock();
+        try {
+            this.version++;
+            drainReadBuffers();
+            invalidate(word);
+        } finally {
+            this.lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Invalidates cached suggestions of the selectors which updated word starts with
+     */
+    @Override
+    public boolean updatePopularity(Word word) {
+        if (!this.suggestionService.updatePopularity(word)) {
+            return false;
+        }
+
+        this.lock.lock();
+        try {
+            this.version++;
+            drainReadBuffers();
+            invalidate(word);
+        } finally {
+            this.lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes cached suggestions of every prefix of the word, caller holds lock
+     */
+    private void invalidate(Word word) {
+        String key = key(word.getName());
+        FoldedSelector prefix = new FoldedSelector();
+
+        for (int i = 1; i <= key.length(); i++) {
+            CharSequence selector = prefix.of(key, i);
+
+            if (this.cache.remove(selector) != null) {
+                this.data.remove(selector.toString());
+            }
+        }
+    }
+
+    /**
+     * Replays recorded hits into eviction policy, caller holds lock
+     */
+    private void drainReadBuffers() {
+        for (ReadBuffer readBuffer : this.readBuffers) {
+            readBuffer.drain(this.cache);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] suggest(String selector, int limit) {
+        if (limit <= 0) {
+            return this.suggestionService.suggest(selector, limit);
+        }
+
+        String key = key(selector);
+        long version = this.version;
+
+        Suggestions cached = this.data.get(key);
+
+        if (cached != null && (limit <= cached.limit || cached.suggestions.length < cached.limit)) {
+            this.hitCount.increment();
+
+            ReadBuffer readBuffer = this.readBuffers[(int) Thread.currentThread().getId() & (this.readBuffers.length - 1)];
+            if (readBuffer.offer(key) && this.lock.tryLock()) {
+                try {
+                    drainReadBuffers();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+
+            return Arrays.copyOf(cached.suggestions, Math.min(limit, cached.suggestions.length));
+        }
+
+        this.missCount.increment();
+
+        String[] suggestions = this.suggestionService.suggest(selector, limit);
+
+        this.lock.lock();
+        try {
+            drainReadBuffers();
+
+            // looking key up counts the miss toward its popularity
+            this.cache.get(key);
+
+            if (this.version == version) {
+                Suggestions added = new Suggestions(suggestions.clone(), limit);
+
+                this.data.put(key, added);
+                String evicted = this.cache.put(key, added);
+
+                if (evicted != null) {
+                    this.data.remove(evicted);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        return suggestions;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Selector is copied to be looked up in the cache
+     */
+    @Override
+    public int suggest(CharSequence selector, String[] suggestions) {
+        String[] cached = suggest(selector.toString(), suggestions.length);
+        System.arraycopy(cached, 0, suggestions, 0, cached.length);
+
+        return cached.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Next letters are read from decorated service, they are not cached
+     */
+    @Override
+    public NextLetter[] suggestNextLetter(String selector) {
+        return this.suggestionService.suggestNextLetter(selector);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean matches(String name, String selector) {
+        if (this.suggestionService instanceof AbstractSuggestionService) {
+            return ((AbstractSuggestionService) this.suggestionService).matches(name, selector);
+        }
+
+        return super.matches(name, selector);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean holdsEveryMatch(String selector, String[] suggestions, int limit) {
+        if (this.suggestionService instanceof AbstractSuggestionService) {
+            return ((AbstractSuggestionService) this.suggestionService).holdsEveryMatch(selector, suggestions, limit);
+        }
+
+        return super.holdsEveryMatch(selector, suggestions, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long trimCount() {
+        if (this.suggestionService instanceof AbstractSuggestionService) {
+            return ((AbstractSuggestionService) this.suggestionService).trimCount();
+        }
+
+        return super.trimCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String key(String selector) {
+        if (this.suggestionService instanceof AbstractSuggestionService) {
+            return ((AbstractSuggestionService) this.suggestionService).key(selector);
+        }
+
+        return super.key(selector);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected char nextLetter(String name, int length) {
+        if (this.suggestionService instanceof AbstractSuggestionService) {
+            return ((AbstractSuggestionService) this.suggestionService).nextLetter(name, length);
+        }
+
+        return super.nextLetter(name, length);
+    }
+
+    /**
+     * @return amount of suggestions served from the cache
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * @return amount of suggestions looked up in decorated service
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * @return amount of selectors evicted from the cache to keep it bounded
+     */
+    public long getEvictionCount() {
+        this.lock.lock();
+        try {
+            return this.cache.evictionCount();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return amount of cached selectors
+     */
+    public int size() {
+        return this.data.size();
+    }
+
+    /**
+     * Cached suggestions
+     */
+    private static final class Suggestions {
+        private final String[] suggestions;
+        private final int limit;
+
+        private Suggestions(String[] suggestions, int limit) {
+            this.suggestions = suggestions;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Lossy ring buffer of hit keys: many threads offer, thread holding lock drains
+     */
+    private static final class ReadBuffer {
+        private final AtomicReferenceArray<String> keys = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCount = new AtomicLong();
+
+        /**
+         * Written only under lock
+         */
+        private volatile long readCount;
+
+        /**
+         * Records the key, unless buffer is full or another thread is recording at the same time
+         *
+         * @return true if buffer should be drained
+         */
+        private boolean offer(String key) {
+            long writeCount = this.writeCount.get();
+            long pending = writeCount - this.readCount;
+
+            if (pending < READ_BUFFER_SIZE && this.writeCount.compareAndSet(writeCount, writeCount + 1)) {
+                this.keys.lazySet((int) writeCount & READ_BUFFER_MASK, key);
+                pending++;
+            }
+
+            return pending >= READ_BUFFER_DRAIN_THRESHOLD;
+        }
+
+        private void drain(TinyLfuCache<String, Suggestions> cache) {
+            long readCount = this.readCount;
+            long writeCount = this.writeCount.get();
+
+            for (; readCount < writeCount; readCount++) {
+                int index = (int) readCount & READ_BUFFER_MASK;
+                String key = this.keys.get(index);
+
+                // slot is claimed but key isn't written yet, it will be read on next drain
+                if (key == null) {
+                    break;
+                }
+
+                this.keys.lazySet(index, null);
+                cache.get(key);
+            }
+
+            this.readCount = readCount;
+        }
+    }
+}
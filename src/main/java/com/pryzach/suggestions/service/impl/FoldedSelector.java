@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+/**
+ * Reusable, case folded view of the selector (or its prefix). Hash code and equality are the same as of case folded
+ * {@link java.lang.String}, so it can be used to look up {@link java.util.HashMap} with {@link java.lang.String} keys
+ * without building lowercase copy of the selector. Reversed view reads selector from its end, for keys of RTL dictionaries.
+ *
+ * Mutable and not thread safe, meant to be kept per thread
+ */
+final class FoldedSelector implements CharSequence {
+    private CharSequence selector;
+    private int length;
+    private boolean reversed;
+    private int hash;
+
+    /**
+     * @param selector selector
+     * @param length length of the selector prefix to view
+     * @return this view
+     */
+    FoldedSelector of(CharSequence selector, int length) {
+        return view(selector, length, false);
+    }
+
+    /**
+     * @param selector selector
+     * @param length length of the selector suffix to view, last char of the selector is the first one of the view
+     * @return this view
+     */
+    FoldedSelector ofReversed(CharSequence selector, int length) {
+        return view(selector, length, true);
+    }
+
+    private FoldedSelector view(CharSequence selector, int length, boolean reversed) {
+        this.selector = selector;
+        this.length = length;
+        this.reversed = reversed;
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + charAt(i);
+        }
+        this.hash = hash;
+
+        return this;
+    }
+
+    static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * @param name word name
+     * @return case folded copy of the name
+     */
+    static String fold(String name) {
+        char[] chars = new char[name.length()];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(name.charAt(i));
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @param name word name
+     * @return case folded and reversed copy of the name
+     */
+    static String foldReversed(String name) {
+        char[] chars = new char[name.length()];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(name.charAt(chars.length - 1 - i));
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @param name word name
+     * @param selector selector
+     * @return true if name ends with selector, ignoring case
+     */
+    static boolean endsWith(String name, CharSequence selector) {
+        int offset = name.length() - selector.length();
+
+        if (offset < 0) {
+            return false;
+        }
+
+        for (int i = 0; i < selector.length(); i++) {
+            if (fold(name.charAt(offset + i)) != fold(selector.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param name word name
+     * @param selector selector
+     * @return true if name starts with selector, ignoring case
+     */
+    static boolean startsWith(String name, CharSequence selector) {
+        if (name.length() < selector.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < selector.length(); i++) {
+            if (fold(name.charAt(i)) != fold(selector.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return fold(selector.charAt(reversed ? selector.length() - 1 - index : index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Equal to case folded {@link java.lang.String} with the same chars
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+
+        String string = (String) o;
+
+        if (string.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = charAt(i);
+        }
+
+        return new String(chars);
+    }
+}
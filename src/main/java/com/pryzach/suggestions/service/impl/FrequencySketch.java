@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+/**
+ * Count-min sketch of 4 bit counters, estimates how often key was seen recently. Every key has counter in 4 rows,
+ * estimate is the smallest of them. Once amount of increments reaches sample size all counters are halved, so old
+ * popularity fades away.
+ *
+ * Not thread safe
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = new long[]{0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 16 counters per long
+     */
+    private final long[] table;
+    private final int tableMask;
+
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param maximumSize amount of keys which frequency matters (cache size)
+     */
+    FrequencySketch(int maximumSize) {
+        int length = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(16, maximumSize);
+    }
+
+    /**
+     * @param hash key hash code
+     * @return estimated amount of times key was seen, up to 15
+     */
+    int frequency(int hash) {
+        int spread = spread(hash);
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, (int) ((this.table[indexOf(spread, i)] >>> offsetOf(spread, i)) & 0xfL));
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Counts key once more
+     *
+     * @param hash key hash code
+     */
+    void increment(int hash) {
+        int spread = spread(hash);
+        boolean incremented = false;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(spread, i);
+            int offset = offsetOf(spread, i);
+            long mask = 0xfL << offset;
+
+            if ((this.table[index] & mask) != mask) {
+                this.table[index] += 1L << offset;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+
+        this.size >>>= 1;
+    }
+
+    private int indexOf(int spread, int row) {
+        long hash = (spread + SEEDS[row]) * SEEDS[row];
+        hash += hash >>> 32;
+
+        return (int) hash & this.tableMask;
+    }
+
+    private static int offsetOf(int spread, int row) {
+        return ((spread >>> (row << 3)) & 0xf) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary radix tree index file layout. All numbers are big endian, all positions are absolute.
+ *
+ * <pre>
+ * header     int magic, int version, int minLength, int topSize, int wordCount, int wordPositionsPosition,
+ *            int rootPosition, int flags
+ * words      (int popularityIndex, int length, char[length] name) for every word, in ranking order, so word id is its rank
+ * positions  int[wordCount] position of every word
+ * nodes      (int labelLength, char[labelLength] label,
+ *             int childCount, char[childCount] keys, int[childCount] childPositions,
+ *             int wordCount, int[wordCount] wordIds,
+ *             int topCount, int[topCount] topWordIds,
+ *             int size) for every node, children before parents, size is amount of words in the subtree
+ * </pre>
+ *
+ * Everything is addressed by position, so file can be either loaded into heap or served straight from memory map
+ */
+final class IndexFile {
+    static final int MAGIC = 0x53554747;
+    static final int VERSION = 2;
+
+    static final int MIN_LENGTH_POSITION = 8;
+    static final int TOP_SIZE_POSITION = 12;
+    static final int WORD_COUNT_POSITION = 16;
+    static final int WORD_POSITIONS_POSITION = 20;
+    static final int ROOT_POSITION = 24;
+    static final int HEADER_LENGTH = 32;
+
+    private IndexFile() {
+    }
+
+    /**
+     * Maps index file into memory and validates its header
+     *
+     * @param file index file
+     * @return read only buffer with the whole file
+     * @throws IOException if file can't be read or isn't an index file
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a suggestions index file: " + file);
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported suggestions index version [" + buffer.getInt(4) + "]: " + file);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Patches header once all words and nodes are written and forces whole file to storage, so it can be moved in place
+     *
+     * @param file index file
+     * @param wordPositionsPosition position of word positions table
+     * @param rootPosition position of root node
+     * @throws IOException if file can't be written
+     */
+    static void writePositions(Path file, int wordPositionsPosition, int rootPosition) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putInt(0, wordPositionsPosition);
+            buffer.putInt(4, rootPosition);
+
+            channel.write(buffer, WORD_POSITIONS_POSITION);
+            channel.force(true);
+        }
+    }
+
+    static char[] getChars(ByteBuffer buffer, int position, int length) {
+        char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(position + 2 * i);
+        }
+
+        return chars;
+    }
+}
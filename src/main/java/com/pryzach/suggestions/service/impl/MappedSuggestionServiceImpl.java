@@ -0,0 +1,403 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.constants.SuggestionConstants;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Read only implementation of {@link com.pryzach.suggestions.service.SuggestionService} which serves suggestions
+ * straight from memory mapped index file, saved with {@link com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl#save(java.nio.file.Path)}.
+ *
+ * Nothing but mapped buffer is kept, tree is walked in place and only suggested words are decoded, so heap footprint
+ * (and GC pressure) doesn't depend on dictionary size. Pages are shared through OS page cache, so several JVMs serving
+ * the same file keep single copy of it in memory.
+ *
+ * Words can't be added. This implementation is thread safe and case insensitive.
+ */
+public class MappedSuggestionServiceImpl extends AbstractSuggestionService {
+    private final ByteBuffer buffer;
+
+    private final int minLength;
+    private final int topSize;
+    private final int wordPositionsPosition;
+    private final int rootPosition;
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param file index file
+     * @throws IOException if file can't be read or isn't an index file
+     */
+    public MappedSuggestionServiceImpl(Path file) throws IOException {
+        this.buffer = IndexFile.map(file);
+
+        this.minLength = buffer.getInt(IndexFile.MIN_LENGTH_POSITION);
+        this.topSize = buffer.getInt(IndexFile.TOP_SIZE_POSITION);
+        this.wordPositionsPosition = buffer.getInt(IndexFile.WORD_POSITIONS_POSITION);
+        this.rootPosition = buffer.getInt(IndexFile.ROOT_POSITION);
+    }
+
+    /**
+     * Not supported, index is read only
+     */
+    @Override
+    public void addWords(Collection<Word> words) {
+        throw new UnsupportedOperationException("Memory mapped index is read only");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Word getWord(String name) {
+        // node path starts with the name, so word is there if its name ends exactly in this node
+        int node = find(name);
+
+        if (node < 0) {
+            return null;
+        }
+
+        int words = wordsPosition(node, this.buffer.getInt(childrenPosition(node)));
+        int wordCount = this.buffer.getInt(words);
+
+        for (int i = 0; i < wordCount; i++) {
+            int position = this.buffer.getInt(this.wordPositionsPosition + 4 * this.buffer.getInt(words + 4 + 4 * i));
+            int length = this.buffer.getInt(position + 4);
+
+            if (length == name.length() && name.equals(new String(IndexFile.getChars(this.buffer, position + 8, length)))) {
+                return new Word(name, this.buffer.getInt(position));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Not supported, index is read only
+     */
+    @Override
+    public boolean removeWord(Word word) {
+        throw new UnsupportedOperationException("Memory mapped index is read only");
+    }
+
+    /**
+     * Not supported, index is read only
+     */
+    @Override
+    public boolean updatePopularity(Word word) {
+        throw new UnsupportedOperationException("Memory mapped index is read only");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] suggest(String selector, int limit) {
+        int node = selector.length() < this.minLength || limit <= 0 ? -1 : find(selector);
+
+        if (node < 0) {
+            return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+        }
+
+        int topCount = this.buffer.getInt(topPosition(node));
+
+        // small subtrees are fully kept in the top words
+        String[] suggestions = new String[topCount < this.topSize ? Math.min(limit, topCount) : limit];
+        int size = suggest(node, suggestions);
+
+        return size == suggestions.length ? suggestions : Arrays.copyOf(suggestions, size);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only suggested words are allocated (they are decoded from the file) as long as buffer length doesn't exceed top size
+     */
+    @Override
+    public int suggest(CharSequence selector, String[] suggestions) {
+        int node = selector.length() < this.minLength || suggestions.length == 0 ? -1 : find(selector);
+
+        if (node < 0) {
+            return 0;
+        }
+
+        return suggest(node, suggestions);
+    }
+
+    private int suggest(int node, String[] suggestions) {
+        int limit = suggestions.length;
+        int top = topPosition(node);
+        int topCount = this.buffer.getInt(top);
+
+        if (limit <= topCount || topCount < this.topSize) {
+            // node keeps enough best words (or whole subtree if it is small)
+            int size = Math.min(limit, topCount);
+
+            for (int i = 0; i < size; i++) {
+                suggestions[i] = name(this.buffer.getInt(top + 4 + 4 * i));
+            }
+
+            return size;
+        }
+
+        return search(node, suggestions);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Letters are child keys of the node selector leads to (or next char of its label), counts are subtree sizes kept in
+     * the file and only best word popularity is read for every letter
+     */
+    @Override
+    public NextLetter[] suggestNextLetter(String selector) {
+        int[] matched = new int[1];
+        int node = selector.length() < this.minLength ? -1 : find(selector, matched);
+
+        if (node < 0) {
+            return EMPTY_NEXT_LETTERS;
+        }
+
+        if (matched[0] < this.buffer.getInt(node)) {
+            // inside of the edge only one letter can follow, and it leads to the whole subtree
+            return new NextLetter[] {nextLetter(this.buffer.getChar(node + 4 + 2 * matched[0]), node)};
+        }
+
+        int children = childrenPosition(node);
+        int childCount = this.buffer.getInt(children);
+
+        // children ranked by id of their best word, packed the same way as search candidates
+        long[] ranked = new long[childCount];
+        for (int i = 0; i < childCount; i++) {
+            int child = this.buffer.getInt(children + 4 + 2 * childCount + 4 * i);
+
+            ranked[i] = candidate(this.buffer.getInt(topPosition(child) + 4), child);
+        }
+
+        Arrays.sort(ranked);
+
+        NextLetter[] letters = new NextLetter[childCount];
+        for (int i = 0; i < childCount; i++) {
+            int child = (int) ranked[i];
+
+            letters[i] = nextLetter(this.buffer.getChar(child + 4), child);
+        }
+
+        return letters;
+    }
+
+    private NextLetter nextLetter(char letter, int node) {
+        int top = topPosition(node);
+        int topCount = this.buffer.getInt(top);
+        int best = this.buffer.getInt(this.wordPositionsPosition + 4 * this.buffer.getInt(top + 4));
+
+        return new NextLetter(Character.toString(letter), this.buffer.getInt(top + 4 + 4 * topCount), this.buffer.getInt(best));
+    }
+
+    /**
+     * Best first search. Word id is its rank, so candidates are ranked by id: words by their own, nodes by id of their
+     * best word. Candidate is packed into long: id in high bits, node position (or 0 for words) in low bits
+     */
+    private int search(int node, String[] suggestions) {
+        int limit = suggestions.length;
+        int size = 0;
+
+        long[] candidates = new long[Math.max(16, Math.min(limit, 1024))];
+        int candidatesSize = 0;
+        candidates[candidatesSize++] = candidate(this.buffer.getInt(topPosition(node) + 4), node);
+
+        while (size < limit && candidatesSize > 0) {
+            long candidate = candidates[0];
+            candidates[0] = candidates[--candidatesSize];
+            siftDown(candidates, candidatesSize);
+
+            int position = (int) candidate;
+
+            if (position == 0) {
+                suggestions[size++] = name((int) (candidate >>> 32));
+                continue;
+            }
+
+            int childCount = this.buffer.getInt(childrenPosition(position));
+            int words = wordsPosition(position, childCount);
+            int wordCount = this.buffer.getInt(words);
+
+            if (candidatesSize + wordCount + childCount > candidates.length) {
+                candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, candidatesSize + wordCount + childCount));
+            }
+
+            for (int i = 0; i < wordCount; i++) {
+                candidates[candidatesSize] = candidate(this.buffer.getInt(words + 4 + 4 * i), 0);
+                siftUp(candidates, candidatesSize++);
+            }
+
+            int childPositions = childrenPosition(position) + 4 + 2 * childCount;
+            for (int i = 0; i < childCount; i++) {
+                int child = this.buffer.getInt(childPositions + 4 * i);
+
+                candidates[candidatesSize] = candidate(this.buffer.getInt(topPosition(child) + 4), child);
+                siftUp(candidates, candidatesSize++);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Walks down the tree following case folded selector
+     *
+     * @return position of the node which path starts with selector or -1 if nothing matches
+     */
+    private int find(CharSequence selector) {
+        return find(selector, null);
+    }
+
+    /**
+     * @param selector word to which we suggest match
+     * @param matched if not null, gets amount of label chars of the found node which selector matched
+     * @return position of the node which path starts with selector or -1 if nothing matches
+     */
+    private int find(CharSequence selector, int[] matched) {
+        int node = this.rootPosition;
+        int i = 0;
+
+        while (i < selector.length()) {
+            int children = childrenPosition(node);
+            int childCount = this.buffer.getInt(children);
+            int index = binarySearch(children + 4, childCount, Character.toLowerCase(selector.charAt(i)));
+
+            if (index < 0) {
+                return -1;
+            }
+
+            node = this.buffer.getInt(children + 4 + 2 * childCount + 4 * index);
+
+            int labelLength = this.buffer.getInt(node);
+            int j = 0;
+            for (; j < labelLength && i < selector.length(); j++, i++) {
+                if (this.buffer.getChar(node + 4 + 2 * j) != Character.toLowerCase(selector.charAt(i))) {
+                    return -1;
+                }
+            }
+
+            if (matched != null) {
+                matched[0] = j;
+            }
+        }
+
+        return node;
+    }
+
+    private int binarySearch(int keys, int count, char key) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleKey = this.buffer.getChar(keys + 2 * middle);
+
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    private int childrenPosition(int node) {
+        return node + 4 + 2 * this.buffer.getInt(node);
+    }
+
+    private int wordsPosition(int node, int childCount) {
+        return childrenPosition(node) + 4 + 6 * childCount;
+    }
+
+    private int topPosition(int node) {
+        int words = wordsPosition(node, this.buffer.getInt(childrenPosition(node)));
+
+        return words + 4 + 4 * this.buffer.getInt(words);
+    }
+
+    private String name(int id) {
+        int position = this.buffer.getInt(this.wordPositionsPosition + 4 * id);
+
+        return new String(IndexFile.getChars(this.buffer, position + 8, this.buffer.getInt(position + 4)));
+    }
+
+    private static long candidate(int id, int node) {
+        return ((long) id << 32) | node;
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        long value = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+
+            if (heap[parent] <= value) {
+                break;
+            }
+
+            heap[index] = heap[parent];
+            index = parent;
+        }
+
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+
+        long value = heap[0];
+        int index = 0;
+
+        while (true) {
+            int child = 2 * index + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+
+            if (value <= heap[child]) {
+                break;
+            }
+
+            heap[index] = heap[child];
+            index = child;
+        }
+
+        heap[index] = value;
+    }
+}
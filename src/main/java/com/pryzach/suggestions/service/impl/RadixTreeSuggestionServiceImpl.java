@@ -0,0 +1,1241 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionConstants;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Implementation of {@link com.pryzach.suggestions.service.SuggestionService} backed by compressed radix tree.
+ *
+ * Every edge holds case folded chunk of the word, so selector of any length is matched char by char while walking
+ * down the tree (no regex and no per prefix copies of the dictionary). Words are stored once, in the node where
+ * their case folded name ends.
+ *
+ * Every node also keeps bounded list of the best words of its subtree (top completions), so most of the queries are
+ * answered straight from the node selector leads to. Longer limits are served by best first search which is ordered by
+ * the best word of each subtree and stops as soon as limit is reached, leaving the rest of the subtree untouched.
+ *
+ * Built tree can be saved into compact binary file with {@link #save(java.nio.file.Path)} and loaded back with
+ * {@link #load(java.nio.file.Path)}, which restores nodes as they are (no sorting and no word splitting), so service
+ * start up is mostly the cost of reading the file.
+ *
+ * This implementation is thread safe: many threads can suggest while one thread adds words. Every batch of added words
+ * is applied to the copy of the nodes it touches (rest of the tree is shared) and the new root is published at once when
+ * batch is done, so readers never lock and always see either complete batch or none of it.
+ *
+ * This implementation is case insensitive, same as {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+ */
+public class RadixTreeSuggestionServiceImpl extends AbstractSuggestionService {
+    private static final char[] EMPTY_LABEL = new char[] {};
+    private static final Node[] EMPTY_NODES = new Node[] {};
+    private static final Word[] EMPTY_WORDS = new Word[] {};
+
+    /**
+     * Ranking used across the tree: higher popularity first, same as {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+     */
+    @SuppressWarnings("unchecked")
+    private static final Comparator<Word> RANKING = Collections.reverseOrder();
+
+    /**
+     * Ranking of best first search candidates, which are either words or nodes represented by their best word
+     */
+    private static final Comparator<Object> CANDIDATE_RANKING = new Comparator<Object>() {
+        @Override
+        public int compare(Object candidate1, Object candidate2) {
+            return RANKING.compare(best(candidate1), best(candidate2));
+        }
+    };
+
+    /**
+     * Minimal length starting from which suggestions would be offered (min 1)
+     */
+    private final int minLength;
+
+    /**
+     * How many best words every node keeps. Queries with limit up to this value never leave node selector leads to
+     */
+    private final int topSize;
+
+    /**
+     * Current immutable snapshot of the tree
+     */
+    private volatile Node root;
+
+    public RadixTreeSuggestionServiceImpl() {
+        // min length = 1, matches would be produced always
+        // top size = 10, typical amount of suggestions shown in drop down
+        this(1, 10);
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param configuration min length and top size of the instance
+     * @throws IllegalArgumentException if configuration is of RTL dictionary
+     */
+    public RadixTreeSuggestionServiceImpl(SuggestionConfiguration configuration) {
+        this(configuration.getMinLength(), configuration.getTopSize());
+
+        if (configuration.getDirection() != TextDirection.LTR) {
+            throw new IllegalArgumentException("RTL dictionaries are supported by prefix cache engine only, add WordRTL words instead");
+        }
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param minLength minimal selector length after which matches would be offered
+     * @param topSize how many best words every node keeps. Higher - more queries answered without search, but more memory used
+     */
+    public RadixTreeSuggestionServiceImpl(int minLength, int topSize) {
+        this.minLength = minLength;
+        this.topSize = Math.max(1, topSize);
+        this.root = new Node(EMPTY_LABEL, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addWords(Collection<Word> words) {
+        // nodes owned by this batch are changed in place, all others are copied before change
+        Object edit = new Object();
+        Node root = this.root.editable(edit);
+
+        for (Word word : words) {
+            insert(root, word, edit);
+        }
+
+        this.root = root;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Word getWord(String name) {
+        // node path starts with the name, so word is there if its name ends exactly in this node
+        Node node = find(this.root, name);
+
+        if (node != null) {
+            for (Word word : node.words) {
+                if (word.getName().equals(name)) {
+                    return word;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Nodes left without words are pruned, so tree stays the same as if word was never added
+     */
+    @Override
+    public synchronized boolean removeWord(Word word) {
+        Object edit = new Object();
+        Node root = this.root.editable(edit);
+        List<Node> path = path(root, word.getName(), edit);
+
+        if (path == null) {
+            return false;
+        }
+
+        Node node = path.get(path.size() - 1);
+        if (!node.removeWord(word.getName())) {
+            return false;
+        }
+
+        for (Node pathNode : path) {
+            pathNode.size--;
+        }
+
+        if (node != root && node.words.length == 0) {
+            Node parent = path.get(path.size() - 2);
+
+            if (node.children.length == 0) {
+                parent.removeChild(Arrays.binarySearch(parent.keys, node.label[0]));
+                path.remove(path.size() - 1);
+
+                if (parent != root && parent.words.length == 0 && parent.children.length == 1) {
+                    parent.absorbChild();
+                }
+            } else if (node.children.length == 1) {
+                node.absorbChild();
+            }
+        }
+
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).rank(this.topSize);
+        }
+
+        this.root = root;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean updatePopularity(Word word) {
+        Object edit = new Object();
+        Node root = this.root.editable(edit);
+        List<Node> path = path(root, word.getName(), edit);
+
+        if (path == null || !path.get(path.size() - 1).removeWord(word.getName())) {
+            return false;
+        }
+
+        path.get(path.size() - 1).addWord(word);
+
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).rank(this.topSize);
+        }
+
+        this.root = root;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] suggest(String selector, int limit) {
+        Node node = selector.length() < this.minLength || limit <= 0 ? null : find(this.root, selector);
+
+        if (node == null) {
+            return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+        }
+
+        String[] suggestions = new String[Math.min(limit, node.size)];
+        suggest(node, suggestions);
+
+        return suggestions;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Nothing is allocated as long as buffer length doesn't exceed top size
+     */
+    @Override
+    public int suggest(CharSequence selector, String[] suggestions) {
+        Node node = selector.length() < this.minLength || suggestions.length == 0 ? null : find(this.root, selector);
+
+        if (node == null) {
+            return 0;
+        }
+
+        return suggest(node, suggestions);
+    }
+
+    /**
+     * @param node node selector leads to
+     * @param suggestions buffer for words suggestions, its length is the limit to how much matches to send back
+     * @return amount of suggestions
+     */
+    private int suggest(Node node, String[] suggestions) {
+        int limit = suggestions.length;
+        Word[] top = node.top;
+
+        if (limit <= top.length || top.length < this.topSize) {
+            // node keeps enough best words (or whole subtree if it is small)
+            int size = Math.min(limit, top.length);
+
+            for (int i = 0; i < size; i++) {
+                suggestions[i] = top[i].getName();
+            }
+
+            return size;
+        }
+
+        return search(node, suggestions);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Letters are child keys of the node selector leads to (or next char of its label), counts are subtree sizes and
+     * popularity is taken from the top words, so no word is looked at
+     */
+    @Override
+    public NextLetter[] suggestNextLetter(String selector) {
+        return newSession().append(selector).suggestNextLetter();
+    }
+
+    /**
+     * Starts new typing session, see {@link com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl.Session}
+     *
+     * @return new empty session
+     */
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * Suggests words which start with selector with up to given amount of typos (Levenshtein distance: inserted, deleted
+     * or replaced chars). Exact matches come first, then matches with one typo and so on, every group in ranking order.
+     *
+     * Tree is walked with Levenshtein automaton: one row of edit distances per char of the path, branches which can't get
+     * within max edits any more are dropped right away. Selectors not longer than max edits match every word
+     *
+     * @param selector word to which we suggest match
+     * @param maxEdits maximal amount of typos, usually 1 or 2
+     * @param limit limit to how much matches to send back
+     * @return array with words suggestions
+     */
+    public String[] suggestFuzzy(String selector, int maxEdits, int limit) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Max edits should not be negative [" + maxEdits + "]");
+        }
+
+        if (selector.length() < this.minLength || limit <= 0) {
+            return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+        }
+
+        char[] folded = fold(selector, 0);
+        int[] row = new int[folded.length + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+
+        // subtrees matching with every distance, only the topmost ones
+        List<List<Node>> matches = new ArrayList<>();
+        for (int d = 0; d <= maxEdits; d++) {
+            matches.add(new ArrayList<Node>());
+        }
+
+        Node root = this.root;
+        int distance = Math.min(folded.length, maxEdits + 1);
+
+        for (int d = distance; d <= maxEdits; d++) {
+            matches.get(d).add(root);
+        }
+
+        if (distance > 0) {
+            for (Node child : root.children) {
+                walk(child, folded, row, maxEdits, distance, matches);
+            }
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        Set<Word> suggested = Collections.newSetFromMap(new IdentityHashMap<Word, Boolean>());
+
+        for (int d = 0; d <= maxEdits && suggestions.size() < limit; d++) {
+            // subtrees of the smaller distance are inside of these ones, their words are already suggested
+            search(matches.get(d), suggested, limit, suggestions);
+        }
+
+        return suggestions.toArray(SuggestionConstants.TO_STRING_ARRAY_HELPER);
+    }
+
+    /**
+     * Feeds node label into Levenshtein automaton and walks down while subtree can still match
+     *
+     * @param node node to walk
+     * @param selector case folded selector
+     * @param parentRow edit distances between selector prefixes and path of the parent
+     * @param maxEdits maximal amount of typos
+     * @param parentDistance distance at which some ancestor already matched, maxEdits + 1 if none did
+     * @param matches topmost matching subtrees by distance
+     */
+    private static void walk(Node node, char[] selector, int[] parentRow, int maxEdits, int parentDistance, List<List<Node>> matches) {
+        int[] row = parentRow;
+        int distance = parentDistance;
+
+        for (char c : node.label) {
+            int[] next = new int[row.length];
+            int minimum = next[0] = row[0] + 1;
+
+            for (int j = 1; j < row.length; j++) {
+                next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1, row[j - 1] + (selector[j - 1] == c ? 0 : 1));
+                minimum = Math.min(minimum, next[j]);
+            }
+
+            row = next;
+            distance = Math.min(distance, row[selector.length]);
+
+            if (minimum > maxEdits || distance == 0) {
+                break;
+            }
+        }
+
+        // whole subtree matches with every distance ancestors didn't match with
+        for (int d = distance; d < parentDistance && d <= maxEdits; d++) {
+            matches.get(d).add(node);
+        }
+
+        int minimum = Integer.MAX_VALUE;
+        for (int edits : row) {
+            minimum = Math.min(minimum, edits);
+        }
+
+        // nothing gets better than exact match, and branches over max edits never match
+        if (distance > 0 && minimum <= maxEdits) {
+            for (Node child : node.children) {
+                walk(child, selector, row, maxEdits, distance, matches);
+            }
+        }
+    }
+
+    /**
+     * Best first search over several subtrees, skipping already suggested words
+     */
+    private static void search(List<Node> nodes, Set<Word> suggested, int limit, List<String> suggestions) {
+        PriorityQueue<Object> candidates = new PriorityQueue<>(Math.max(1, nodes.size()), CANDIDATE_RANKING);
+
+        for (Node node : nodes) {
+            if (node.size > 0) {
+                candidates.add(node);
+            }
+        }
+
+        while (suggestions.size() < limit && !candidates.isEmpty()) {
+            Object candidate = candidates.poll();
+
+            if (candidate instanceof Word) {
+                if (suggested.add((Word) candidate)) {
+                    suggestions.add(((Word) candidate).getName());
+                }
+            } else {
+                Node candidateNode = (Node) candidate;
+
+                Collections.addAll(candidates, candidateNode.words);
+                for (Node child : candidateNode.children) {
+                    if (child.size > 0) {
+                        candidates.add(child);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Best first search, every subtree is represented by its best word, so words come out of the queue in ranking order
+     *
+     * @param node node which subtree is searched
+     * @param suggestions buffer for words suggestions, its length is the limit to how much matches to send back
+     * @return amount of suggestions
+     */
+    private static int search(Node node, String[] suggestions) {
+        int limit = suggestions.length;
+        int size = 0;
+
+        PriorityQueue<Object> candidates = new PriorityQueue<>(Math.min(limit, node.size), CANDIDATE_RANKING);
+        candidates.add(node);
+
+        while (size < limit && !candidates.isEmpty()) {
+            Object candidate = candidates.poll();
+
+            if (candidate instanceof Word) {
+                suggestions[size++] = ((Word) candidate).getName();
+            } else {
+                Node candidateNode = (Node) candidate;
+
+                Collections.addAll(candidates, candidateNode.words);
+                Collections.addAll(candidates, candidateNode.children);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Saves current tree into binary index file, see {@link com.pryzach.suggestions.service.impl.IndexFile} for the layout.
+     * Words added while saving are not included.
+     *
+     * Index is written into temporary file next to the target and then atomically moved in place, so crash while saving
+     * leaves either old or new index, never a partially written one
+     *
+     * @param file index file, overwritten if exists
+     * @throws IOException if file can't be written
+     */
+    public void save(Path file) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            writeIndex(temporaryFile, file);
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes current tree into index file
+     *
+     * @param file file to write
+     * @param target file index is saved as, for error messages
+     */
+    private void writeIndex(Path file, Path target) throws IOException {
+        Node root = this.root;
+
+        List<Word> words = new ArrayList<>();
+        collectWords(root, words);
+        Collections.sort(words, RANKING);
+
+        // word id is word rank, so lists of ids are ranked simply by id
+        Map<Word, Integer> ids = new IdentityHashMap<>(words.size());
+        int[] wordPositions = new int[words.size()];
+        int wordPositionsPosition;
+        int rootPosition;
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            output.writeInt(IndexFile.MAGIC);
+            output.writeInt(IndexFile.VERSION);
+            output.writeInt(this.minLength);
+            output.writeInt(this.topSize);
+            output.writeInt(words.size());
+            output.writeInt(0);
+            output.writeInt(0);
+            output.writeInt(0);
+
+            for (int i = 0; i < words.size(); i++) {
+                Word word = words.get(i);
+                ids.put(word, i);
+                wordPositions[i] = output.size();
+
+                output.writeInt(word.getPopularityIndex());
+                output.writeInt(word.getName().length());
+                output.writeChars(word.getName());
+            }
+
+            wordPositionsPosition = output.size();
+            for (int wordPosition : wordPositions) {
+                output.writeInt(wordPosition);
+            }
+
+            rootPosition = write(output, root, ids);
+
+            // size stops counting at max int
+            if (output.size() == Integer.MAX_VALUE) {
+                throw new IOException("Index doesn't fit into 2GB: " + target);
+            }
+        }
+
+        // positions are known only once everything is written
+        IndexFile.writePositions(file, wordPositionsPosition, rootPosition);
+    }
+
+    /**
+     * Loads tree from binary index file saved with {@link #save(java.nio.file.Path)}
+     *
+     * @param file index file
+     * @return new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     * @throws IOException if file can't be read or isn't an index file
+     */
+    public static RadixTreeSuggestionServiceImpl load(Path file) throws IOException {
+        ByteBuffer buffer = IndexFile.map(file);
+
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl(buffer.getInt(IndexFile.MIN_LENGTH_POSITION), buffer.getInt(IndexFile.TOP_SIZE_POSITION));
+
+        Word[] words = new Word[buffer.getInt(IndexFile.WORD_COUNT_POSITION)];
+        int position = IndexFile.HEADER_LENGTH;
+        for (int i = 0; i < words.length; i++) {
+            int popularityIndex = buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+
+            words[i] = new Word(new String(IndexFile.getChars(buffer, position + 8, length)), popularityIndex);
+            position += 8 + 2 * length;
+        }
+
+        suggestionService.root = read(buffer, buffer.getInt(IndexFile.ROOT_POSITION), words);
+
+        return suggestionService;
+    }
+
+    private static void collectWords(Node node, List<Word> words) {
+        Collections.addAll(words, node.words);
+
+        for (Node child : node.children) {
+            collectWords(child, words);
+        }
+    }
+
+    /**
+     * Writes node after all its children, so positions of the children are already known
+     *
+     * @return position of the node
+     */
+    private static int write(DataOutputStream output, Node node, Map<Word, Integer> ids) throws IOException {
+        int[] childPositions = new int[node.children.length];
+        for (int i = 0; i < node.children.length; i++) {
+            childPositions[i] = write(output, node.children[i], ids);
+        }
+
+        int position = output.size();
+
+        output.writeInt(node.label.length);
+        for (char c : node.label) {
+            output.writeChar(c);
+        }
+
+        output.writeInt(node.keys.length);
+        for (char key : node.keys) {
+            output.writeChar(key);
+        }
+        for (int childPosition : childPositions) {
+            output.writeInt(childPosition);
+        }
+
+        output.writeInt(node.words.length);
+        for (Word word : node.words) {
+            output.writeInt(ids.get(word));
+        }
+
+        output.writeInt(node.top.length);
+        for (Word word : node.top) {
+            output.writeInt(ids.get(word));
+        }
+
+        output.writeInt(node.size);
+
+        return position;
+    }
+
+    private static Node read(ByteBuffer buffer, int position, Word[] words) {
+        int labelLength = buffer.getInt(position);
+        Node node = new Node(IndexFile.getChars(buffer, position + 4, labelLength), null);
+        position += 4 + 2 * labelLength;
+
+        int childCount = buffer.getInt(position);
+        node.keys = childCount == 0 ? EMPTY_LABEL : IndexFile.getChars(buffer, position + 4, childCount);
+        node.children = childCount == 0 ? EMPTY_NODES : new Node[childCount];
+        position += 4 + 2 * childCount;
+
+        for (int i = 0; i < childCount; i++) {
+            node.children[i] = read(buffer, buffer.getInt(position), words);
+            position += 4;
+        }
+
+        node.words = readWords(buffer, position, words);
+        position += 4 + 4 * node.words.length;
+
+        node.top = readWords(buffer, position, words);
+        position += 4 + 4 * node.top.length;
+
+        node.size = buffer.getInt(position);
+
+        return node;
+    }
+
+    private static Word[] readWords(ByteBuffer buffer, int position, Word[] words) {
+        int count = buffer.getInt(position);
+
+        if (count == 0) {
+            return EMPTY_WORDS;
+        }
+
+        Word[] result = new Word[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = words[buffer.getInt(position + 4 + 4 * i)];
+        }
+
+        return result;
+    }
+
+    /**
+     * Walks down the tree following case folded selector
+     *
+     * @param root root of the tree snapshot
+     * @param selector word to which we suggest match
+     * @return node which path starts with selector or null if nothing matches
+     */
+    private static Node find(Node root, CharSequence selector) {
+        Node node = root;
+        int i = 0;
+
+        while (i < selector.length()) {
+            int index = Arrays.binarySearch(node.keys, fold(selector.charAt(i)));
+
+            if (index < 0) {
+                return null;
+            }
+
+            node = node.children[index];
+
+            char[] label = node.label;
+            for (int j = 0; j < label.length && i < selector.length(); j++, i++) {
+                if (label[j] != fold(selector.charAt(i))) {
+                    return null;
+                }
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Walks down to the node where case folded name ends, every node of the path is made editable
+     *
+     * @param root editable root of the tree
+     * @param name word name
+     * @param edit current batch
+     * @return nodes from the root to the node where name ends or null if there is no such node
+     */
+    private static List<Node> path(Node root, String name, Object edit) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+
+        path.add(node);
+
+        while (i < name.length()) {
+            int index = Arrays.binarySearch(node.keys, fold(name.charAt(i)));
+
+            if (index < 0) {
+                return null;
+            }
+
+            Node child = node.children[index].editable(edit);
+            node.children[index] = child;
+
+            for (char c : child.label) {
+                if (i == name.length() || c != fold(name.charAt(i++))) {
+                    return null;
+                }
+            }
+
+            node = child;
+            path.add(node);
+        }
+
+        return path;
+    }
+
+    private void insert(Node root, Word word, Object edit) {
+        String name = word.getName();
+        Node node = root;
+        List<Node> path = new ArrayList<>();
+        int i = 0;
+
+        while (i < name.length()) {
+            path.add(node);
+            char key = fold(name.charAt(i));
+            int index = Arrays.binarySearch(node.keys, key);
+
+            if (index < 0) {
+                Node leaf = new Node(fold(name, i), edit);
+                node.addChild(-index - 1, key, leaf);
+
+                node = leaf;
+                break;
+            }
+
+            Node child = node.children[index].editable(edit);
+            node.children[index] = child;
+            char[] label = child.label;
+
+            int j = 0;
+            while (j < label.length && i < name.length() && label[j] == fold(name.charAt(i))) {
+                j++;
+                i++;
+            }
+
+            if (j < label.length) {
+                // word diverges in the middle of the edge, splitting it
+                Node split = new Node(Arrays.copyOf(label, j), edit);
+                child.label = Arrays.copyOfRange(label, j, label.length);
+                split.keys = new char[] {child.label[0]};
+                split.children = new Node[] {child};
+                split.top = child.top;
+                split.size = child.size;
+
+                node.children[index] = split;
+                child = split;
+            }
+
+            node = child;
+        }
+
+        path.add(node);
+        Word replaced = node.addWord(word);
+
+        if (replaced == null) {
+            for (Node pathNode : path) {
+                pathNode.offer(word, this.topSize);
+                pathNode.size++;
+            }
+        } else if (replaced != word) {
+            // word got more popular, best words of the whole path has to be recalculated from the bottom
+            for (int j = path.size() - 1; j >= 0; j--) {
+                path.get(j).rank(this.topSize);
+            }
+        }
+    }
+
+    private static Word best(Object candidate) {
+        return candidate instanceof Word ? (Word) candidate : ((Node) candidate).top[0];
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    private static char[] fold(String name, int from) {
+        char[] label = new char[name.length() - from];
+
+        for (int i = 0; i < label.length; i++) {
+            label[i] = fold(name.charAt(from + i));
+        }
+
+        return label;
+    }
+
+    /**
+     * Typing session: keeps position in the tree selector leads to, so appending or deleting one char moves the position
+     * by one step instead of walking down from the root, and suggestions and next letters are read right from there.
+     * Cost of the keystroke doesn't depend on selector length.
+     *
+     * Session follows the service: if words were added, removed or updated since the last keystroke, position is
+     * walked again from the new root once.
+     *
+     * This class is not thread safe, every typing user needs own session
+     */
+    public final class Session {
+        private final StringBuilder selector = new StringBuilder();
+
+        /**
+         * Tree snapshot position belongs to
+         */
+        private Node root;
+
+        /**
+         * Node and amount of its label chars matched after every matched char of selector, root at 0
+         */
+        private Node[] nodes = new Node[16];
+        private int[] offsets = new int[16];
+
+        /**
+         * Amount of selector chars which matched, the rest of selector leads nowhere
+         */
+        private int matched;
+
+        private Session() {
+            clear();
+        }
+
+        /**
+         * @param c char typed at the end of selector
+         * @return this session
+         */
+        public Session append(char c) {
+            refresh();
+            type(c);
+
+            return this;
+        }
+
+        /**
+         * @param chars chars typed (or pasted) at the end of selector
+         * @return this session
+         */
+        public Session append(CharSequence chars) {
+            refresh();
+
+            for (int i = 0; i < chars.length(); i++) {
+                type(chars.charAt(i));
+            }
+
+            return this;
+        }
+
+        /**
+         * Deletes last char of selector, does nothing if selector is empty
+         *
+         * @return this session
+         */
+        public Session delete() {
+            refresh();
+
+            if (this.selector.length() > 0) {
+                this.selector.setLength(this.selector.length() - 1);
+                this.matched = Math.min(this.matched, this.selector.length());
+            }
+
+            return this;
+        }
+
+        /**
+         * Empties selector
+         */
+        public void clear() {
+            this.selector.setLength(0);
+            this.root = RadixTreeSuggestionServiceImpl.this.root;
+            this.nodes[0] = this.root;
+            this.offsets[0] = 0;
+            this.matched = 0;
+        }
+
+        /**
+         * @return current selector
+         */
+        public String getSelector() {
+            return this.selector.toString();
+        }
+
+        /**
+         * Same as {@link com.pryzach.suggestions.service.SuggestionService#suggest(String, int)} for current selector
+         *
+         * @param limit limit to how much matches to send back
+         * @return array with words suggestions
+         */
+        public String[] suggest(int limit) {
+            Node node = node();
+
+            if (node == null || limit <= 0) {
+                return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+            }
+
+            String[] suggestions = new String[Math.min(limit, node.size)];
+            RadixTreeSuggestionServiceImpl.this.suggest(node, suggestions);
+
+            return suggestions;
+        }
+
+        /**
+         * Same as {@link com.pryzach.suggestions.service.SuggestionService#suggest(CharSequence, String[])} for current selector
+         *
+         * @param suggestions buffer for words suggestions, its length is the limit to how much matches to send back
+         * @return amount of suggestions written into buffer
+         */
+        public int suggest(String[] suggestions) {
+            Node node = node();
+
+            if (node == null || suggestions.length == 0) {
+                return 0;
+            }
+
+            return RadixTreeSuggestionServiceImpl.this.suggest(node, suggestions);
+        }
+
+        /**
+         * Same as {@link com.pryzach.suggestions.service.SuggestionService#suggestNextLetter(String)} for current selector
+         *
+         * @return array of next letter suggestions
+         */
+        public NextLetter[] suggestNextLetter() {
+            Node node = node();
+
+            if (node == null) {
+                return EMPTY_NEXT_LETTERS;
+            }
+
+            int offset = this.offsets[this.matched];
+
+            if (offset < node.label.length) {
+                // inside of the edge only one letter can follow, and it leads to the whole subtree
+                return new NextLetter[] {nextLetter(node.label[offset], node)};
+            }
+
+            Node[] children = node.children.clone();
+            Arrays.sort(children, CANDIDATE_RANKING);
+
+            NextLetter[] letters = new NextLetter[children.length];
+            for (int i = 0; i < children.length; i++) {
+                letters[i] = nextLetter(children[i].label[0], children[i]);
+            }
+
+            return letters;
+        }
+
+        private NextLetter nextLetter(char letter, Node node) {
+            return new NextLetter(Character.toString(letter), node.size, node.top[0].getPopularityIndex());
+        }
+
+        /**
+         * @return node current selector leads to or null if it doesn't lead anywhere or is too short
+         */
+        private Node node() {
+            refresh();
+
+            if (this.selector.length() < RadixTreeSuggestionServiceImpl.this.minLength || this.matched < this.selector.length()) {
+                return null;
+            }
+
+            return this.nodes[this.matched];
+        }
+
+        /**
+         * Walks selector again if tree was changed since last keystroke
+         */
+        private void refresh() {
+            Node root = RadixTreeSuggestionServiceImpl.this.root;
+
+            if (root == this.root) {
+                return;
+            }
+
+            this.root = root;
+            this.nodes[0] = root;
+            this.matched = 0;
+
+            for (int i = 0; i < this.selector.length() && this.matched == i; i++) {
+                step(this.selector.charAt(i));
+            }
+        }
+
+        private void type(char c) {
+            // once selector leads nowhere, further chars can't lead anywhere either
+            if (this.matched == this.selector.length()) {
+                step(c);
+            }
+
+            this.selector.append(c);
+        }
+
+        /**
+         * Moves position by the char following matched part of selector
+         */
+        private void step(char c) {
+            Node node = this.nodes[this.matched];
+            int offset = this.offsets[this.matched];
+            char key = fold(c);
+
+            if (offset < node.label.length) {
+                if (node.label[offset] != key) {
+                    return;
+                }
+
+                offset++;
+            } else {
+                int index = Arrays.binarySearch(node.keys, key);
+
+                if (index < 0) {
+                    return;
+                }
+
+                node = node.children[index];
+                offset = 1;
+            }
+
+            if (++this.matched == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, this.nodes.length * 2);
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+            }
+
+            this.nodes[this.matched] = node;
+            this.offsets[this.matched] = offset;
+        }
+    }
+
+    /**
+     * Radix tree node. Children are kept in two parallel arrays sorted by first (case folded) char of child label.
+     *
+     * Published nodes are never changed: arrays are always replaced and only nodes owned by current batch
+     * (see {@link #editable(Object)}) are changed in place
+     */
+    private static final class Node {
+        /**
+         * Batch which owns this node
+         */
+        private final Object edit;
+
+        private char[] label;
+        private char[] keys = EMPTY_LABEL;
+        private Node[] children = EMPTY_NODES;
+
+        /**
+         * Words which case folded name ends in this node, in ranking order
+         */
+        private Word[] words = EMPTY_WORDS;
+
+        /**
+         * Best words of the whole subtree (including words of this node), in ranking order
+         */
+        private Word[] top = EMPTY_WORDS;
+
+        /**
+         * Amount of words in the whole subtree (including words of this node)
+         */
+        private int size;
+
+        private Node(char[] label, Object edit) {
+            this.label = label;
+            this.edit = edit;
+        }
+
+        /**
+         * @param edit current batch
+         * @return this node if it is owned by current batch, otherwise its copy owned by current batch
+         */
+        private Node editable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+
+            Node copy = new Node(this.label, edit);
+            copy.keys = this.keys;
+            // children are replaced in place while walking down, so array can't be shared
+            copy.children = this.children.clone();
+            copy.words = this.words;
+            copy.top = this.top;
+            copy.size = this.size;
+
+            return copy;
+        }
+
+        private void addChild(int position, char key, Node child) {
+            char[] keys = new char[this.keys.length + 1];
+            Node[] children = new Node[this.children.length + 1];
+
+            System.arraycopy(this.keys, 0, keys, 0, position);
+            System.arraycopy(this.children, 0, children, 0, position);
+            keys[position] = key;
+            children[position] = child;
+            System.arraycopy(this.keys, position, keys, position + 1, this.keys.length - position);
+            System.arraycopy(this.children, position, children, position + 1, this.children.length - position);
+
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private void removeChild(int position) {
+            char[] keys = new char[this.keys.length - 1];
+            Node[] children = new Node[this.children.length - 1];
+
+            System.arraycopy(this.keys, 0, keys, 0, position);
+            System.arraycopy(this.children, 0, children, 0, position);
+            System.arraycopy(this.keys, position + 1, keys, position, keys.length - position);
+            System.arraycopy(this.children, position + 1, children, position, children.length - position);
+
+            this.keys = keys;
+            this.children = children;
+        }
+
+        /**
+         * Merges the only child into this node, which has no words of its own, so edges stay compressed
+         */
+        private void absorbChild() {
+            Node child = this.children[0];
+
+            char[] label = Arrays.copyOf(this.label, this.label.length + child.label.length);
+            System.arraycopy(child.label, 0, label, this.label.length, child.label.length);
+
+            this.label = label;
+            this.keys = child.keys;
+            // child may be published, so its array can't be shared
+            this.children = child.children.clone();
+            this.words = child.words;
+            this.top = child.top;
+            this.size = child.size;
+        }
+
+        /**
+         * @param name word name
+         * @return true if word with exactly the same name was removed
+         */
+        private boolean removeWord(String name) {
+            for (int i = 0; i < this.words.length; i++) {
+                if (this.words[i].getName().equals(name)) {
+                    Word[] words = new Word[this.words.length - 1];
+                    System.arraycopy(this.words, 0, words, 0, i);
+                    System.arraycopy(this.words, i + 1, words, i, words.length - i);
+
+                    this.words = words;
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Adds word to the node. Word with exactly the same name is kept only once, with the highest popularity
+         *
+         * @return null if word is new to the node, word itself if node already has it with the same or higher popularity
+         * and previous word otherwise
+         */
+        private Word addWord(Word word) {
+            List<Word> words = new ArrayList<>(Arrays.asList(this.words));
+            Word replaced = null;
+
+            for (Iterator<Word> iterator = words.iterator(); iterator.hasNext(); ) {
+                Word existing = iterator.next();
+
+                if (existing.getName().equals(word.getName())) {
+                    if (existing.getPopularityIndex() >= word.getPopularityIndex()) {
+                        return word;
+                    }
+
+                    replaced = existing;
+                    iterator.remove();
+                }
+            }
+
+            words.add(word);
+            Collections.sort(words, RANKING);
+
+            this.words = words.toArray(EMPTY_WORDS);
+
+            return replaced;
+        }
+
+        /**
+         * Offers new word of the subtree to the best words
+         */
+        private void offer(Word word, int topSize) {
+            int position = Arrays.binarySearch(this.top, word, RANKING);
+            position = position < 0 ? -position - 1 : position;
+
+            if (position >= topSize) {
+                return;
+            }
+
+            Word[] top = new Word[Math.min(this.top.length + 1, topSize)];
+            System.arraycopy(this.top, 0, top, 0, position);
+            top[position] = word;
+            System.arraycopy(this.top, position, top, position + 1, top.length - position - 1);
+
+            this.top = top;
+        }
+
+        /**
+         * Recalculates best words from words of this node and best words of the children
+         */
+        private void rank(int topSize) {
+            List<Word> top = new ArrayList<>(Arrays.asList(this.words));
+
+            for (Node child : this.children) {
+                Collections.addAll(top, child.top);
+            }
+
+            Collections.sort(top, RANKING);
+
+            this.top = top.subList(0, Math.min(top.size(), topSize)).toArray(EMPTY_WORDS);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.service.impl;
+
+/**
+ * Array which is changed by copying only the nodes on the path to changed element, same as
+ * {@link com.pryzach.suggestions.service.impl.SnapshotMap}: version owned by current batch is changed in place, published
+ * versions never change and are read without locking. Elements sit in the leaves of 32 wide trie, array grows by
+ * adding levels on top of it.
+ *
+ * Changes are not thread safe
+ *
+ * @param <E> element
+ */
+final class SnapshotArray<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private final Object edit;
+    private Node root;
+
+    /**
+     * Shift of the root level, 0 if root is the only leaf
+     */
+    private int shift;
+
+    /**
+     * Creates empty array, it has to be made editable to be changed
+     */
+    SnapshotArray() {
+        this(null, new Node(null), 0);
+    }
+
+    private SnapshotArray(Object edit, Node root, int shift) {
+        this.edit = edit;
+        this.root = root;
+        this.shift = shift;
+    }
+
+    /**
+     * @param edit current batch
+     * @return this array if it is owned by current batch, otherwise its version owned by current batch
+     */
+    SnapshotArray<E> editable(Object edit) {
+        return this.edit == edit ? this : new SnapshotArray<E>(edit, this.root, this.shift);
+    }
+
+    /**
+     * @param index index
+     * @return element or null if it was never set
+     */
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+        if ((index >>> this.shift) > MASK) {
+            return null;
+        }
+
+        Node node = this.root;
+        for (int level = this.shift; level > 0 && node != null; level -= BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+
+        return node == null ? null : (E) node.array[index & MASK];
+    }
+
+    /**
+     * @param index index, not negative
+     * @param element element
+     */
+    void set(int index, E element) {
+        while ((index >>> this.shift) > MASK) {
+            Node root = new Node(this.edit);
+            root.array[0] = this.root;
+
+            this.root = root;
+            this.shift += BITS;
+        }
+
+        this.root = editable(this.root);
+        Node node = this.root;
+
+        for (int level = this.shift; level > 0; level -= BITS) {
+            int i = (index >>> level) & MASK;
+            Node child = (Node) node.array[i];
+
+            node.array[i] = child == null ? new Node(this.edit) : editable(child);
+            node = (Node) node.array[i];
+        }
+
+        node.array[index & MASK] = element;
+    }
+
+    private Node editable(Node node) {
+        if (node.edit == this.edit) {
+            return node;
+        }
+
+        Node copy = new Node(this.edit);
+        System.arraycopy(node.array, 0, copy.array, 0, WIDTH);
+
+        return copy;
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private final Object[] array = new Object[WIDTH];
+
+        private Node(Object edit) {
+            this.edit = edit;
+        }
+    }
+}
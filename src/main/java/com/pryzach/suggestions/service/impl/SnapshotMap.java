@@ -0,0 +1,382 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.service.impl;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash trie map which is changed by copying only the nodes on the path to changed key, the rest of the nodes is shared
+ * with the previous version. Every version is owned by one batch (see {@link #editable(Object)}): nodes created by the
+ * batch are changed in place, nodes of other versions are copied before change, so once version is published it never
+ * changes and can be read by many threads without locking.
+ *
+ * Every node holds up to 32 entries or child nodes, picked by 5 bits of key hash code. Keys with the same hash code
+ * end up in collision node below the last level. Look up takes key equality, so any key with the same hash code and
+ * equality as stored one (like {@link com.pryzach.suggestions.service.impl.FoldedSelector}) finds its value.
+ *
+ * Changes are not thread safe, null keys and values are not supported
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+final class SnapshotMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Shift of the last level which still picks node slot by hash bits, nodes below it are collision nodes
+     */
+    private static final int MAX_SHIFT = 30;
+
+    private final Object edit;
+    private Node root;
+    private int size;
+
+    /**
+     * Creates empty map, it has to be made editable to be changed
+     */
+    SnapshotMap() {
+        this(null, null, 0);
+    }
+
+    private SnapshotMap(Object edit, Node root, int size) {
+        this.edit = edit;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param edit current batch
+     * @return this map if it is owned by current batch, otherwise its version owned by current batch
+     */
+    SnapshotMap<K, V> editable(Object edit) {
+        return this.edit == edit ? this : new SnapshotMap<K, V>(edit, this.root, this.size);
+    }
+
+    /**
+     * @param key key
+     * @return value or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        int hash = key.hashCode();
+        Node node = this.root;
+
+        for (int shift = 0; node != null; shift += BITS) {
+            if (shift > MAX_SHIFT) {
+                for (int i = 0; i < node.array.length; i += 2) {
+                    if (key.equals(node.array[i])) {
+                        return (V) node.array[i + 1];
+                    }
+                }
+
+                return null;
+            }
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+
+            if (node.array[i] != null) {
+                return key.equals(node.array[i]) ? (V) node.array[i + 1] : null;
+            }
+
+            node = (Node) node.array[i + 1];
+        }
+
+        return null;
+    }
+
+    /**
+     * @param key key
+     * @param value value
+     */
+    void put(K key, V value) {
+        if (this.root == null) {
+            this.root = new Node(this.edit, 0, new Object[] {});
+        }
+
+        this.root = put(this.root, 0, key.hashCode(), key, value);
+    }
+
+    /**
+     * @param key key
+     * @return removed value or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V remove(Object key) {
+        if (this.root == null) {
+            return null;
+        }
+
+        Object[] removed = new Object[1];
+        this.root = remove(this.root, 0, key.hashCode(), key, removed);
+
+        return (V) removed[0];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Iterates entries of this version, map must not be changed meanwhile
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Entries();
+    }
+
+    private Node put(Node node, int shift, int hash, K key, V value) {
+        if (shift > MAX_SHIFT) {
+            for (int i = 0; i < node.array.length; i += 2) {
+                if (key.equals(node.array[i])) {
+                    return set(node, i + 1, value);
+                }
+            }
+
+            return insert(node, node.array.length, 0, key, value);
+        }
+
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+
+        if ((node.bitmap & bit) == 0) {
+            return insert(node, i, bit, key, value);
+        }
+
+        Object storedKey = node.array[i];
+
+        if (storedKey == null) {
+            return set(node, i + 1, put((Node) node.array[i + 1], shift + BITS, hash, key, value));
+        }
+
+        if (key.equals(storedKey)) {
+            return set(node, i + 1, value);
+        }
+
+        // slot is taken by another key, both of them go one level down
+        Node child = pair(shift + BITS, storedKey, node.array[i + 1], hash, key, value);
+        this.size++;
+
+        node = editable(node);
+        node.array[i] = null;
+        node.array[i + 1] = child;
+
+        return node;
+    }
+
+    private Node remove(Node node, int shift, int hash, Object key, Object[] removed) {
+        if (shift > MAX_SHIFT) {
+            for (int i = 0; i < node.array.length; i += 2) {
+                if (key.equals(node.array[i])) {
+                    removed[0] = node.array[i + 1];
+                    this.size--;
+
+                    return delete(node, i, 0);
+                }
+            }
+
+            return node;
+        }
+
+        int bit = 1 << ((hash >>> shift) & MASK);
+
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        Object storedKey = node.array[i];
+
+        if (storedKey == null) {
+            Node child = remove((Node) node.array[i + 1], shift + BITS, hash, key, removed);
+
+            return child == null ? delete(node, i, bit) : set(node, i + 1, child);
+        }
+
+        if (!key.equals(storedKey)) {
+            return node;
+        }
+
+        removed[0] = node.array[i + 1];
+        this.size--;
+
+        return delete(node, i, bit);
+    }
+
+    /**
+     * @return node with entry of two keys, split by hash bits of given level
+     */
+    private Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        if (shift > MAX_SHIFT) {
+            return new Node(this.edit, 0, new Object[] {key1, value1, key2, value2});
+        }
+
+        int index1 = (key1.hashCode() >>> shift) & MASK;
+        int index2 = (hash2 >>> shift) & MASK;
+
+        if (index1 == index2) {
+            return new Node(this.edit, 1 << index1, new Object[] {null, pair(shift + BITS, key1, value1, hash2, key2, value2)});
+        }
+
+        return new Node(this.edit, (1 << index1) | (1 << index2), index1 < index2
+                ? new Object[] {key1, value1, key2, value2}
+                : new Object[] {key2, value2, key1, value1});
+    }
+
+    private Node set(Node node, int i, Object value) {
+        if (node.array[i] == value) {
+            return node;
+        }
+
+        node = editable(node);
+        node.array[i] = value;
+
+        return node;
+    }
+
+    private Node insert(Node node, int i, int bit, Object key, Object value) {
+        Object[] array = new Object[node.array.length + 2];
+        System.arraycopy(node.array, 0, array, 0, i);
+        array[i] = key;
+        array[i + 1] = value;
+        System.arraycopy(node.array, i, array, i + 2, node.array.length - i);
+        this.size++;
+
+        node = editable(node);
+        node.bitmap |= bit;
+        node.array = array;
+
+        return node;
+    }
+
+    /**
+     * @return node without entry at given position, null if it was the last one (root is kept even if empty)
+     */
+    private Node delete(Node node, int i, int bit) {
+        if (node.array.length == 2 && node != this.root) {
+            return null;
+        }
+
+        Object[] array = new Object[node.array.length - 2];
+        System.arraycopy(node.array, 0, array, 0, i);
+        System.arraycopy(node.array, i + 2, array, i, array.length - i);
+
+        node = editable(node);
+        node.bitmap &= ~bit;
+        node.array = array;
+
+        return node;
+    }
+
+    private Node editable(Node node) {
+        return node.edit == this.edit ? node : new Node(this.edit, node.bitmap, node.array.clone());
+    }
+
+    /**
+     * Trie node: pairs of key and value, key is null if value is child node
+     */
+    private static final class Node {
+        private final Object edit;
+        private int bitmap;
+        private Object[] array;
+
+        private Node(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    /**
+     * Depth first iterator, keeps position in every node of the current path
+     */
+    private final class Entries implements Iterator<Map.Entry<K, V>> {
+        private final Node[] path = new Node[MAX_SHIFT / BITS + 2];
+        private final int[] positions = new int[path.length];
+        private int depth = -1;
+
+        private Map.Entry<K, V> next;
+
+        private Entries() {
+            if (root != null) {
+                this.path[0] = root;
+                this.depth = 0;
+            }
+
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            this.next = null;
+
+            while (this.depth >= 0) {
+                Node node = this.path[this.depth];
+                int i = this.positions[this.depth];
+
+                if (i == node.array.length) {
+                    this.depth--;
+                    continue;
+                }
+
+                this.positions[this.depth] = i + 2;
+
+                if (node.array[i] == null) {
+                    this.depth++;
+                    this.path[this.depth] = (Node) node.array[i + 1];
+                    this.positions[this.depth] = 0;
+                    continue;
+                }
+
+                this.next = new AbstractMap.SimpleImmutableEntry<>((K) node.array[i], (V) node.array[i + 1]);
+                return;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<K, V> next = this.next;
+            advance();
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionConstants;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+
+import java.util.*;
+
+/**
+ * Implementation of {@link com.pryzach.suggestions.service.SuggestionService} backed by sorted lexicon.
+ *
+ * Words are kept in array sorted by case folded name, so words matching selector always form one continuous range,
+ * which is found with two binary searches (no regex and no per query string building). Words inside of the range are
+ * ranked by popularity with bounded heap.
+ *
+ * Very compact, but ranking cost grows with range size, so it fits best for long selectors. Unlike other engines, every
+ * single word update is O(n): {@link #addWord(com.pryzach.suggestions.model.Word)}, {@link #removeWord(com.pryzach.suggestions.model.Word)}
+ * and {@link #updatePopularity(com.pryzach.suggestions.model.Word)} copy whole lexicon. Prefer {@link #addWords(java.util.Collection)},
+ * {@link #removeWords(java.util.Collection)} and {@link #updatePopularity(java.util.Collection)}, which apply whole batch
+ * with one copy.
+ *
+ * This implementation is thread safe: lexicon is immutable and is replaced at once when update is done, so many threads
+ * can suggest without locking while one thread adds words.
+ *
+ * This implementation is case insensitive, same as {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+ */
+public class SortedArraySuggestionServiceImpl extends AbstractSuggestionService {
+    private static final String[] EMPTY_KEYS = new String[] {};
+    private static final Word[] EMPTY_WORDS = new Word[] {};
+
+    /**
+     * Ranking of the matched words: higher popularity first, same as {@link com.pryzach.suggestions.service.impl.SuggestionServiceImpl}
+     */
+    @SuppressWarnings("unchecked")
+    private static final Comparator<Word> RANKING = Collections.reverseOrder();
+
+    /**
+     * Per thread ranking scratch space
+     */
+    private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[16];
+        }
+    };
+
+    /**
+     * Minimal length starting from which suggestions would be offered (min 1)
+     */
+    private final int minLength;
+
+    /**
+     * Current immutable lexicon
+     */
+    private volatile Lexicon lexicon;
+
+    public SortedArraySuggestionServiceImpl() {
+        // min length = 1, matches would be produced always
+        this(1);
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param configuration min length of the instance
+     * @throws IllegalArgumentException if configuration is of RTL dictionary
+     */
+    public SortedArraySuggestionServiceImpl(SuggestionConfiguration configuration) {
+        this(configuration.getMinLength());
+
+        if (configuration.getDirection() != TextDirection.LTR) {
+            throw new IllegalArgumentException("RTL dictionaries are supported by prefix cache engine only, add WordRTL words instead");
+        }
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param minLength minimal selector length after which matches would be offered
+     */
+    public SortedArraySuggestionServiceImpl(int minLength) {
+        this.minLength = minLength;
+
+        this.lexicon = new Lexicon(EMPTY_KEYS, EMPTY_WORDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addWords(Collection<Word> words) {
+        Lexicon lexicon = this.lexicon;
+        Entry[] entries = new Entry[words.size()];
+
+        int i = 0;
+        for (Word word : words) {
+            entries[i++] = new Entry(fold(word.getName()), word);
+        }
+
+        Arrays.sort(entries);
+
+        // merging sorted batch into the lexicon
+        String[] keys = new String[lexicon.keys.length + entries.length];
+        Word[] merged = new Word[keys.length];
+
+        int size = 0;
+        int existing = 0;
+        int added = 0;
+        while (existing < lexicon.keys.length || added < entries.length) {
+            String key;
+            Word word;
+
+            if (added >= entries.length || (existing < lexicon.keys.length && lexicon.keys[existing].compareTo(entries[added].key) <= 0)) {
+                key = lexicon.keys[existing];
+                word = lexicon.words[existing++];
+            } else {
+                key = entries[added].key;
+                word = entries[added++].word;
+            }
+
+            // word with exactly the same name is kept only once, with the highest popularity
+            int duplicate = size - 1;
+            while (duplicate >= 0 && keys[duplicate].equals(key) && !merged[duplicate].getName().equals(word.getName())) {
+                duplicate--;
+            }
+
+            if (duplicate >= 0 && keys[duplicate].equals(key)) {
+                if (merged[duplicate].getPopularityIndex() < word.getPopularityIndex()) {
+                    merged[duplicate] = word;
+                }
+            } else {
+                keys[size] = key;
+                merged[size++] = word;
+            }
+        }
+
+        this.lexicon = new Lexicon(Arrays.copyOf(keys, size), Arrays.copyOf(merged, size));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Word getWord(String name) {
+        Lexicon lexicon = this.lexicon;
+        int index = indexOf(lexicon, name);
+
+        return index < 0 ? null : lexicon.words[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Word is found with binary search, but lexicon is copied without it, so it is O(n), see {@link #removeWords(java.util.Collection)}
+     */
+    @Override
+    public synchronized boolean removeWord(Word word) {
+        Lexicon lexicon = this.lexicon;
+        int index = indexOf(lexicon, word.getName());
+
+        if (index < 0) {
+            return false;
+        }
+
+        String[] keys = new String[lexicon.keys.length - 1];
+        Word[] words = new Word[keys.length];
+
+        System.arraycopy(lexicon.keys, 0, keys, 0, index);
+        System.arraycopy(lexicon.words, 0, words, 0, index);
+        System.arraycopy(lexicon.keys, index + 1, keys, index, keys.length - index);
+        System.arraycopy(lexicon.words, index + 1, words, index, words.length - index);
+
+        this.lexicon = new Lexicon(keys, words);
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Word keeps its place in the lexicon, only words array is copied, so it is O(n), see {@link #updatePopularity(java.util.Collection)}
+     */
+    @Override
+    public synchronized boolean updatePopularity(Word word) {
+        Lexicon lexicon = this.lexicon;
+        int index = indexOf(lexicon, word.getName());
+
+        if (index < 0) {
+            return false;
+        }
+
+        Word[] words = lexicon.words.clone();
+        words[index] = word;
+
+        this.lexicon = new Lexicon(lexicon.keys, words);
+
+        return true;
+    }
+
+    /**
+     * Removes words with exactly the same names, lexicon is copied once for the whole batch
+     *
+     * @param words words to remove
+     * @return amount of removed words
+     */
+    public synchronized int removeWords(Collection<Word> words) {
+        Lexicon lexicon = this.lexicon;
+        BitSet removed = new BitSet(lexicon.keys.length);
+
+        for (Word word : words) {
+            int index = indexOf(lexicon, word.getName());
+
+            if (index >= 0) {
+                removed.set(index);
+            }
+        }
+
+        if (removed.isEmpty()) {
+            return 0;
+        }
+
+        String[] keys = new String[lexicon.keys.length - removed.cardinality()];
+        Word[] kept = new Word[keys.length];
+
+        int size = 0;
+        for (int i = removed.nextClearBit(0); i < lexicon.keys.length; i = removed.nextClearBit(i + 1)) {
+            keys[size] = lexicon.keys[i];
+            kept[size++] = lexicon.words[i];
+        }
+
+        this.lexicon = new Lexicon(keys, kept);
+
+        return removed.cardinality();
+    }
+
+    /**
+     * Updates popularity of the words with exactly the same names, words array is copied once for the whole batch
+     *
+     * @param words words with new popularity
+     * @return amount of updated words
+     */
+    public synchronized int updatePopularity(Collection<Word> words) {
+        Lexicon lexicon = this.lexicon;
+        Word[] updated = null;
+        int count = 0;
+
+        for (Word word : words) {
+            int index = indexOf(lexicon, word.getName());
+
+            if (index < 0) {
+                continue;
+            }
+
+            if (updated == null) {
+                updated = lexicon.words.clone();
+            }
+
+            updated[index] = word;
+            count++;
+        }
+
+        if (updated != null) {
+            this.lexicon = new Lexicon(lexicon.keys, updated);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return index of the word with exactly the same name or -1 if there is no such word
+     */
+    private static int indexOf(Lexicon lexicon, String name) {
+        String key = fold(name);
+        int i = Arrays.binarySearch(lexicon.keys, key);
+
+        if (i < 0) {
+            return -1;
+        }
+
+        // words with the same key are next to each other, but binary search may land on any of them
+        while (i > 0 && lexicon.keys[i - 1].equals(key)) {
+            i--;
+        }
+
+        for (; i < lexicon.keys.length && lexicon.keys[i].equals(key); i++) {
+            if (lexicon.words[i].getName().equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] suggest(String selector, int limit) {
+        if (selector.length() < this.minLength || limit <= 0) {
+            return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+        }
+
+        Lexicon lexicon = this.lexicon;
+
+        int from = bound(lexicon.keys, selector, false);
+        int to = bound(lexicon.keys, selector, true);
+
+        String[] suggestions = new String[Math.min(limit, to - from)];
+        rank(lexicon.words, from, to, suggestions);
+
+        return suggestions;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Nothing is allocated once ranking scratch space of the calling thread is big enough
+     */
+    @Override
+    public int suggest(CharSequence selector, String[] suggestions) {
+        if (selector.length() < this.minLength || suggestions.length == 0) {
+            return 0;
+        }
+
+        Lexicon lexicon = this.lexicon;
+
+        int from = bound(lexicon.keys, selector, false);
+        int to = bound(lexicon.keys, selector, true);
+
+        return rank(lexicon.words, from, to, suggestions);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Keys of every letter are continuous part of selector range, so range is split with binary search per letter and
+     * counts come for free. Best word of every letter is found by scanning its part of the range, same as ranking does
+     */
+    @Override
+    public NextLetter[] suggestNextLetter(String selector) {
+        if (selector.length() < this.minLength) {
+            return EMPTY_NEXT_LETTERS;
+        }
+
+        Lexicon lexicon = this.lexicon;
+
+        int from = bound(lexicon.keys, selector, false);
+        int to = bound(lexicon.keys, selector, true);
+
+        // keys equal to selector sort first, no letter follows them
+        while (from < to && lexicon.keys[from].length() == selector.length()) {
+            from++;
+        }
+
+        List<NextLetter> nextLetters = new ArrayList<>();
+        final List<Word> best = new ArrayList<>();
+        StringBuilder letterSelector = new StringBuilder(selector).append(' ');
+
+        while (from < to) {
+            char letter = lexicon.keys[from].charAt(selector.length());
+            letterSelector.setCharAt(selector.length(), letter);
+
+            int letterTo = bound(lexicon.keys, from, to, letterSelector, true);
+
+            Word letterBest = lexicon.words[from];
+            for (int i = from + 1; i < letterTo; i++) {
+                if (RANKING.compare(lexicon.words[i], letterBest) < 0) {
+                    letterBest = lexicon.words[i];
+                }
+            }
+
+            nextLetters.add(new NextLetter(Character.toString(letter), letterTo - from, letterBest.getPopularityIndex()));
+            best.add(letterBest);
+
+            from = letterTo;
+        }
+
+        Integer[] order = new Integer[nextLetters.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return RANKING.compare(best.get(i1), best.get(i2));
+            }
+        });
+
+        NextLetter[] ranked = new NextLetter[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranked[i] = nextLetters.get(order[i]);
+        }
+
+        return ranked;
+    }
+
+    /**
+     * Ranks words of the range with bounded heap of word indexes, worst of the current best words on top
+     *
+     * @param words lexicon words
+     * @param from range start
+     * @param to range end
+     * @param suggestions buffer for words suggestions, its length is the limit to how much matches to send back
+     * @return amount of suggestions
+     */
+    private static int rank(Word[] words, int from, int to, String[] suggestions) {
+        int limit = Math.min(suggestions.length, to - from);
+
+        int[] heap = SCRATCH.get();
+        if (heap.length < limit) {
+            heap = new int[limit];
+            SCRATCH.set(heap);
+        }
+
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            if (size < limit) {
+                heap[size] = i;
+                siftUp(heap, size++, words);
+            } else if (RANKING.compare(words[i], words[heap[0]]) < 0) {
+                heap[0] = i;
+                siftDown(heap, size, words);
+            }
+        }
+
+        // taking worst word out of the heap until it is empty
+        for (int i = size - 1; i >= 0; i--) {
+            suggestions[i] = words[heap[0]].getName();
+
+            heap[0] = heap[i];
+            siftDown(heap, i, words);
+        }
+
+        return size;
+    }
+
+    private static void siftUp(int[] heap, int index, Word[] words) {
+        int value = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+
+            if (RANKING.compare(words[heap[parent]], words[value]) >= 0) {
+                break;
+            }
+
+            heap[index] = heap[parent];
+            index = parent;
+        }
+
+        heap[index] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, Word[] words) {
+        if (size == 0) {
+            return;
+        }
+
+        int value = heap[0];
+        int index = 0;
+
+        while (true) {
+            int child = 2 * index + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && RANKING.compare(words[heap[child + 1]], words[heap[child]]) > 0) {
+                child++;
+            }
+
+            if (RANKING.compare(words[value], words[heap[child]]) >= 0) {
+                break;
+            }
+
+            heap[index] = heap[child];
+            index = child;
+        }
+
+        heap[index] = value;
+    }
+
+    /**
+     * Binary search of the selector range boundary
+     *
+     * @param keys sorted case folded names
+     * @param selector word to which we suggest match
+     * @param upper false - first key starting with selector, true - first key after the ones starting with selector
+     * @return index of the boundary
+     */
+    private static int bound(String[] keys, CharSequence selector, boolean upper) {
+        return bound(keys, 0, keys.length, selector, upper);
+    }
+
+    /**
+     * Binary search of the selector range boundary inside of the given range of keys
+     */
+    private static int bound(String[] keys, int from, int to, CharSequence selector, boolean upper) {
+        int low = from;
+        int high = to;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(keys[middle], selector);
+
+            if (comparison < 0 || (upper && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares key with case folded selector, treating every key which starts with selector as equal
+     */
+    private static int compare(String key, CharSequence selector) {
+        int length = Math.min(key.length(), selector.length());
+
+        for (int i = 0; i < length; i++) {
+            int difference = key.charAt(i) - fold(selector.charAt(i));
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return key.length() < selector.length() ? -1 : 0;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    private static String fold(String name) {
+        char[] key = new char[name.length()];
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = fold(name.charAt(i));
+        }
+
+        return new String(key);
+    }
+
+    /**
+     * Immutable lexicon
+     */
+    private static final class Lexicon {
+        /**
+         * Case folded names, sorted
+         */
+        private final String[] keys;
+
+        /**
+         * Words, in the same order as {@link #keys}
+         */
+        private final Word[] words;
+
+        private Lexicon(String[] keys, Word[] words) {
+            this.keys = keys;
+            this.words = words;
+        }
+    }
+
+    /**
+     * Lexicon entry, used to sort added words
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final String key;
+        private final Word word;
+
+        private Entry(String key, Word word) {
+            this.key = key;
+            this.word = word;
+        }
+
+        @Override
+        public int compareTo(Entry entry) {
+            return this.key.compareTo(entry.key);
+        }
+    }
+}
@@ -16,36 +16,181 @@
 
 package com.pryzach.suggestions.service.impl;
 
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
 import com.pryzach.suggestions.constants.SuggestionConstants;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.metrics.IndexGauges;
+import com.pryzach.suggestions.metrics.SuggestPath;
+import com.pryzach.suggestions.metrics.SuggestionMetrics;
+import com.pryzach.suggestions.model.NextLetter;
 import com.pryzach.suggestions.model.Word;
-import com.pryzach.suggestions.model.WordRTL;
-import com.pryzach.suggestions.service.SuggestionService;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Implementation of {@link com.pryzach.suggestions.service.SuggestionService} . Uses regex to match words
+ * Implementation of {@link com.pryzach.suggestions.service.SuggestionService} . Uses prefix cache to match words,
+ * selectors longer than max caching length are matched against ranked words of their longest cached prefix
  *
- * CAUTION due to proof of concept type of implementation {@link #addWord(com.pryzach.suggestions.model.Word)} recalculates
- * cache all the time every time and {@link #addWords(java.util.Collection)} doesn't do bulk cache update
+ * Every word is interned once into dense word table and gets int id. Prefix cache keeps only primitive, ranked lists
+ * of word ids (no per prefix sets of words), so every prefix membership costs 4 bytes and lists are iterated sequentially.
+ * Every word is inserted straight into ranked lists of its prefixes, so {@link #addWord(com.pryzach.suggestions.model.Word)}
+ * costs O(word length * log n) and nothing is re-serialized on update. Big batches are bulk loaded in parallel instead,
+ * see {@link #addWords(java.util.Collection, java.util.concurrent.ForkJoinPool)}
+ *
+ * This implementation is thread safe: many threads can suggest while one thread adds, removes or updates words. Prefix
+ * cache, next letters, name to id map and word table are persistent tries: every batch copies only the nodes and prefix
+ * lists it touches (the rest is shared) and publishes new snapshot at once when batch is done, so readers never lock and
+ * always see either complete batch or none of it
+ *
+ * Prefix lists shorter than max caching length can be capped with {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getBucketCapacity()}:
+ * they keep only the best words then (plus some headroom, so removed words rarely make list to be rebuilt), while the
+ * longest lists stay complete for longer selectors.
+ *
+ * Heap taken by prefix lists of every length is accounted, see {@link #getPrefixMemory(int)}. If index grows over
+ * {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getMemoryBudget()}, it is trimmed: lists of one length
+ * get capped or the longest lists are dropped, whichever saves more memory per query observed at affected selector
+ * lengths. Trimmed index is never grown back.
+ *
+ * Every suggestion and every added batch can be measured with {@link com.pryzach.suggestions.metrics.SuggestionMetrics},
+ * which also gets size of the index through {@link com.pryzach.suggestions.metrics.IndexGauges}
+ *
+ * RTL dictionary (see {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getDirection()}) keeps plain words
+ * in display order and matches them by their end: prefix cache is keyed by reversed names and selectors are read
+ * backwards while looked up, so neither words nor selectors are reversed by caller and suggestions are returned as they
+ * were added
  *
  * This implementation is case insensitive (more computationally intensive, but closer to real-life requirements)
  */
-public class SuggestionServiceImpl implements SuggestionService {
+public class SuggestionServiceImpl extends AbstractSuggestionService implements IndexGauges {
+    /**
+     * Ranking used in prefix cache: higher popularity first
+     */
+    @SuppressWarnings("unchecked")
+    private static final Comparator<Word> RANKING = Collections.reverseOrder();
+
+    /**
+     * Batches of this size and bigger are bulk loaded in parallel
+     */
+    private static final int BULK_LOAD_SIZE = 10000;
+
+    /**
+     * Estimated heap taken by every word apart from its name chars: word, name string, word table slot and name to id entry
+     */
+    private static final int WORD_OVERHEAD = 128;
+
+    /**
+     * Estimated heap taken by every prefix list apart from its ids: map entry, key string and list object
+     */
+    private static final int PREFIX_OVERHEAD = 128;
+
+    /**
+     * Capacity prefix lists are capped to when index is over memory budget, typical amount of suggestions shown in drop down
+     */
+    private static final int TRIMMED_BUCKET_CAPACITY = 10;
+
+    /**
+     * Per thread prefix cache look up keys, so selectors are never copied to be looked up
+     */
+    private static final ThreadLocal<FoldedSelector> LOOKUP_KEYS = new ThreadLocal<FoldedSelector>() {
+        @Override
+        protected FoldedSelector initialValue() {
+            return new FoldedSelector();
+        }
+    };
+
     /**
      * Minimal length starting from which suggestions would be offered (min 1)
      */
     private final int minLength;
 
+    /**
+     * True if words are matched by their end
+     */
+    private final boolean rtl;
+
     /**
      * Max caching length. Essentially optimization to shard cache until it becomes more manageable
      */
     private final int maxCachingLength;
 
-    private final Map<String, String> cache;
-    private final Map<String, Set<Word>> wordsCache;
+    /**
+     * Index readers work with, published by writer when batch is done
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Amount of trimming steps, see {@link #trimCount()}. Written by writer only
+     */
+    private volatile long trimCount;
+
+    /**
+     * Batch which owns writer's versions of the index structures below. Everything below is guarded by this service
+     */
+    private Object edit;
+
+    /**
+     * Length of the longest cached prefixes. Max caching length, unless index was trimmed to fit memory budget
+     */
+    private int depth;
+
+    /**
+     * Capacity of prefix lists by their length, capped lists keep a quarter more and are refilled when they get shorter.
+     * Lists as long as depth are never capped
+     */
+    private final int[] capacities;
+
+    private final long memoryBudget;
+
+    /**
+     * False for unbounded memory budget, queries aren't counted then
+     */
+    private final boolean budgeted;
+
+    /**
+     * Queries by selector length, selectors longer than max caching length are counted as max caching length
+     */
+    private final LongAdder[] queries;
+
+    /**
+     * Prefix cache: case folded prefix to ranked ids of words starting with it
+     */
+    private SnapshotMap<String, WordIds> wordsCache;
+
+    /**
+     * Case folded prefix to sorted letters which follow it in prefix cache, for prefixes shorter than max caching length.
+     * Prefix cache holds only non empty lists, so every letter leads to one
+     */
+    private SnapshotMap<String, char[]> nextLetters;
+
+    /**
+     * Word name to word id
+     */
+    private SnapshotMap<String, Integer> wordIds;
+
+    /**
+     * Word table, word id is index in this table
+     */
+    private SnapshotArray<Word> words;
+    private int wordsCount;
+
+    private final SuggestionMetrics metrics;
+
+    /**
+     * False for {@link com.pryzach.suggestions.metrics.SuggestionMetrics#NOOP}, clock isn't read at all then
+     */
+    private final boolean measured;
+
+    /**
+     * Gauges, prefix lists and their entries are counted by prefix length. Published with every snapshot
+     */
+    private final int[] prefixCounts;
+    private final LongAdder[] prefixEntryCounts;
+    private long nameLength;
 
     public SuggestionServiceImpl () {
         // min length = 1, matches would be produced always.
@@ -60,181 +205,1186 @@ public class SuggestionServiceImpl implements SuggestionService {
      * @param maxCachingLength how long maximum partial cache key string should be. Essentially - have a lot of long words - set higher, otherwise - set lower.
      */
     public SuggestionServiceImpl(int minLength, int maxCachingLength) {
+        this(minLength, maxCachingLength, SuggestionMetrics.NOOP);
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param minLength minimal selector length after which matches would be offered
+     * @param maxCachingLength how long maximum partial cache key string should be. Essentially - have a lot of long words - set higher, otherwise - set lower.
+     * @param metrics metrics every suggestion and every added batch is recorded into
+     */
+    public SuggestionServiceImpl(int minLength, int maxCachingLength, SuggestionMetrics metrics) {
+        this(minLength, maxCachingLength, Integer.MAX_VALUE, Long.MAX_VALUE, TextDirection.LTR, metrics);
+    }
+
+    /**
+     * Creates new {@link com.pryzach.suggestions.service.SuggestionService} instance
+     *
+     * @param configuration min length, prefix depth (max caching length), bucket capacity, memory budget, text direction
+     *                      and metrics of the instance
+     */
+    public SuggestionServiceImpl(SuggestionConfiguration configuration) {
+        this(configuration.getMinLength(), configuration.getPrefixDepth(), configuration.getBucketCapacity(), configuration.getMemoryBudget(),
+                configuration.getDirection(), configuration.getMetrics());
+    }
+
+    private SuggestionServiceImpl(int minLength, int maxCachingLength, int bucketCapacity, long memoryBudget, TextDirection direction,
+                                  SuggestionMetrics metrics) {
         this.minLength = minLength;
+        this.rtl = direction == TextDirection.RTL;
         this.maxCachingLength = maxCachingLength;
+        this.depth = maxCachingLength;
+
+        this.capacities = new int[maxCachingLength + 1];
+        Arrays.fill(this.capacities, bucketCapacity);
+        this.capacities[maxCachingLength] = Integer.MAX_VALUE;
+
+        this.memoryBudget = memoryBudget;
+        this.budgeted = memoryBudget != Long.MAX_VALUE;
+        this.queries = adders(maxCachingLength + 1);
+
+        this.prefixCounts = new int[maxCachingLength + 1];
+        this.prefixEntryCounts = adders(maxCachingLength + 1);
+
+        this.wordsCache = new SnapshotMap<>();
+        this.nextLetters = new SnapshotMap<>();
+        this.wordIds = new SnapshotMap<>();
+        this.words = new SnapshotArray<>();
+        publish();
+
+        this.metrics = metrics;
+        this.measured = metrics != SuggestionMetrics.NOOP;
+        metrics.bind(this);
+    }
+
+    private static LongAdder[] adders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Word with exactly the same name is kept only once, with the highest popularity
+     */
+    @Override
+    public synchronized void addWords(Collection<Word> words) {
+        if (words.size() >= BULK_LOAD_SIZE) {
+            addWords(words, ForkJoinPool.commonPool());
+            return;
+        }
+
+        long start = this.measured ? System.nanoTime() : 0;
+        Set<String> underflowed = new HashSet<>();
+        edit();
+
+        for (Word word : words) {
+            Integer id = this.wordIds.get(word.getName());
+
+            if (id == null) {
+                id = this.wordsCount++;
+                this.wordIds.put(word.getName(), id);
+                this.words.set(id, word);
+                this.nameLength += word.getName().length();
+
+                index(id, word);
+            } else if (this.words.get(id).getPopularityIndex() < word.getPopularityIndex()) {
+                // word got more popular, it has to be moved up in every prefix list
+                unindex(id, this.words.get(id), underflowed);
+                this.words.set(id, word);
+                index(id, word);
+            }
+        }
+
+        refill(underflowed);
+
+        if (this.budgeted && indexMemory() > this.memoryBudget) {
+            trim();
+        }
+
+        publish();
+
+        if (this.measured) {
+            this.metrics.indexed(words.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Word getWord(String name) {
+        Snapshot snapshot = this.snapshot;
+        Integer id = snapshot.wordIds.get(name);
+
+        return id == null ? null : snapshot.words.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Word id is not reused
+     */
+    @Override
+    public synchronized boolean removeWord(Word word) {
+        if (this.wordIds.get(word.getName()) == null) {
+            return false;
+        }
 
-        this.cache = new HashMap<>();
-        this.wordsCache = new HashMap<>();
+        edit();
+        Integer id = this.wordIds.remove(word.getName());
+
+        Set<String> underflowed = new HashSet<>();
+        unindex(id, this.words.get(id), underflowed);
+        this.nameLength -= word.getName().length();
+        this.words.set(id, null);
+        refill(underflowed);
+
+        publish();
+
+        return true;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void addWords(Collection<Word> words) {
-        Map<String, Set<Word>> wordsCachePartial = new HashMap<>();
+    public synchronized boolean updatePopularity(Word word) {
+        Integer id = this.wordIds.get(word.getName());
+
+        if (id == null) {
+            return false;
+        }
+
+        edit();
+
+        Set<String> underflowed = new HashSet<>();
+        unindex(id, this.words.get(id), underflowed);
+        this.words.set(id, word);
+        index(id, word);
+        refill(underflowed);
+
+        publish();
+
+        return true;
+    }
+
+    /**
+     * Starts new batch: every structure shared with published snapshot is copied before it is changed
+     */
+    private void edit() {
+        this.edit = new Object();
+
+        this.wordsCache = this.wordsCache.editable(this.edit);
+        this.nextLetters = this.nextLetters.editable(this.edit);
+        this.wordIds = this.wordIds.editable(this.edit);
+        this.words = this.words.editable(this.edit);
+    }
+
+    /**
+     * Publishes changes of current batch to readers at once
+     */
+    private void publish() {
+        long[] prefixEntryCounts = new long[this.prefixEntryCounts.length];
+        for (int i = 0; i < prefixEntryCounts.length; i++) {
+            prefixEntryCounts[i] = this.prefixEntryCounts[i].sum();
+        }
+
+        this.snapshot = new Snapshot(this.wordsCache, this.nextLetters, this.wordIds, this.words, this.depth, this.prefixCounts.clone(),
+                prefixEntryCounts, this.nameLength);
+    }
+
+    /**
+     * Bulk loads words in parallel. Words are interned on calling thread, then prefix cache is built in shards, one per
+     * first case folded letter (last one for RTL dictionary): every prefix of the word starts with its first letter, so shards never share prefix
+     * lists and are built concurrently without locking. Every shard ranks its words once and merges them into prefix
+     * lists in one pass, instead of inserting words one by one.
+     *
+     * Word with exactly the same name is kept only once, with the highest popularity
+     *
+     * @param words words to add
+     * @param pool pool to build shards on
+     */
+    public synchronized void addWords(Collection<Word> words, ForkJoinPool pool) {
+        long start = this.measured ? System.nanoTime() : 0;
+        edit();
+
+        // ids of added or updated words, none of them is in prefix cache until shards are built
+        BitSet changed = new BitSet();
+        Map<Character, WordIds> shards = new HashMap<>();
+
+        // capped lists can't be rebuilt while changed words are missing from prefix cache
+        Set<String> underflowed = new HashSet<>();
 
         for (Word word : words) {
+            Integer id = this.wordIds.get(word.getName());
+
+            if (id == null) {
+                id = this.wordsCount++;
+                this.wordIds.put(word.getName(), id);
+                this.nameLength += word.getName().length();
+            } else if (this.words.get(id).getPopularityIndex() < word.getPopularityIndex()) {
+                if (!changed.get(id)) {
+                    unindex(id, this.words.get(id), underflowed);
+                }
+            } else {
+                continue;
+            }
+
+            this.words.set(id, word);
 
-            String wordNameLowercase = word.getName().toLowerCase();
-            StringBuilder cacheKeyPartial = new StringBuilder( (this.minLength > 1 ? wordNameLowercase.substring(0, this.minLength - 1) : "") );
-            for (int i = this.minLength - 1; i < Math.min(wordNameLowercase.length(), this.maxCachingLength); i++) {
-                //String cacheKeyPartial = word.getName().substring(0, i + 1).toLowerCase();
-                cacheKeyPartial.append(wordNameLowercase.charAt(i));
+            if (!changed.get(id) && word.getName().length() >= this.minLength) {
+                Character letter = FoldedSelector.fold(nextLetter(word.getName(), 0));
+                WordIds shard = shards.get(letter);
 
-                if (!wordsCachePartial.containsKey(cacheKeyPartial.toString())) {
-                    wordsCachePartial.put(cacheKeyPartial.toString(), new TreeSet<Word>(Collections.reverseOrder()));
+                if (shard == null) {
+                    shard = new WordIds(this.edit);
+                    shards.put(letter, shard);
                 }
 
-                wordsCachePartial.get(cacheKeyPartial.toString()).add(word);
+                shard.append(id);
             }
+
+            changed.set(id);
         }
 
-        for (String cacheKeyPartial : wordsCachePartial.keySet()) {
+        List<Callable<Map<String, WordIds>>> tasks = new ArrayList<>();
+        for (final WordIds shard : shards.values()) {
+            tasks.add(new Callable<Map<String, WordIds>>() {
+                @Override
+                public Map<String, WordIds> call() {
+                    return index(shard);
+                }
+            });
+        }
 
-            if (!this.wordsCache.containsKey(cacheKeyPartial)) {
-                this.wordsCache.put(cacheKeyPartial, new TreeSet<Word>(Collections.reverseOrder()));
+        try {
+            for (Future<Map<String, WordIds>> shardCache : pool.invokeAll(tasks)) {
+                for (Map.Entry<String, WordIds> entry : shardCache.get().entrySet()) {
+                    if (this.wordsCache.get(entry.getKey()) == null) {
+                        cache(entry.getKey(), entry.getValue());
+                    } else {
+                        this.wordsCache.put(entry.getKey(), entry.getValue());
+                    }
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while adding words", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to add words", e.getCause());
+        }
 
-            // merging partial and full cache
-            this.wordsCache.get(cacheKeyPartial).addAll(wordsCachePartial.get(cacheKeyPartial));
+        refill(underflowed);
 
-            StringBuilder cacheUpdate = new StringBuilder(SuggestionConstants.WORDS_CACHE_SEPARATOR);
-            // updating cache
-            for (Word word : this.wordsCache.get(cacheKeyPartial)) {
-                cacheUpdate.append(word.getName()).append(SuggestionConstants.WORDS_CACHE_SEPARATOR);
+        if (this.budgeted && indexMemory() > this.memoryBudget) {
+            trim();
+        }
+
+        publish();
 
-                if (SuggestionConstants.CACHE_STRING_LENGTH_LIMIT > 0 && cacheUpdate.length() > SuggestionConstants.CACHE_STRING_LENGTH_LIMIT) {
-                    break;
+        if (this.measured) {
+            this.metrics.indexed(words.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Indexes shard of words. Prefix lists of the shard are copied (unless current batch already did) and updated,
+     * prefix cache itself is only read
+     *
+     * @param shard ids of words starting with the same case folded letter
+     * @return new and updated prefix lists, to be put into prefix cache
+     */
+    private Map<String, WordIds> index(WordIds shard) {
+        shard.rank(this.words);
+
+        // appending ranked words keeps prefix lists ranked
+        Map<String, WordIds> added = new HashMap<>();
+        for (int i = 0; i < shard.size; i++) {
+            String wordNameLowercase = key(this.words.get(shard.ids[i]).getName());
+
+            for (int j = this.minLength; j <= Math.min(wordNameLowercase.length(), this.depth); j++) {
+                String cacheKeyPartial = wordNameLowercase.substring(0, j);
+                WordIds cacheWordIds = added.get(cacheKeyPartial);
+
+                if (cacheWordIds == null) {
+                    cacheWordIds = new WordIds(this.edit);
+                    added.put(cacheKeyPartial, cacheWordIds);
                 }
+
+                cacheWordIds.append(shard.ids[i]);
+            }
+        }
+
+        Map<String, WordIds> changed = new HashMap<>();
+        for (Map.Entry<String, WordIds> entry : added.entrySet()) {
+            WordIds cacheWordIds = this.wordsCache.get(entry.getKey());
+            int size = 0;
+
+            if (cacheWordIds == null) {
+                cacheWordIds = entry.getValue();
+            } else {
+                size = cacheWordIds.size;
+                cacheWordIds = cacheWordIds.editable(this.edit);
+                cacheWordIds.merge(entry.getValue(), this.words);
+            }
+
+            cacheWordIds.truncate(maximumSize(entry.getKey()));
+            this.prefixEntryCounts[entry.getKey().length()].add(cacheWordIds.size - size);
+            changed.put(entry.getKey(), cacheWordIds);
+        }
+
+        return changed;
+    }
+
+    private void index(int id, Word word) {
+        String wordNameLowercase = key(word.getName());
+
+        for (int i = this.minLength; i <= Math.min(wordNameLowercase.length(), this.depth); i++) {
+            String cacheKeyPartial = wordNameLowercase.substring(0, i);
+            WordIds cacheWordIds = editable(cacheKeyPartial);
+
+            if (cacheWordIds == null) {
+                cacheWordIds = new WordIds(this.edit);
+                cache(cacheKeyPartial, cacheWordIds);
             }
 
-            this.cache.put(cacheKeyPartial, cacheUpdate.toString());
+            int size = cacheWordIds.size;
+            cacheWordIds.add(id, word, this.words, maximumSize(cacheKeyPartial));
+            this.prefixEntryCounts[i].add(cacheWordIds.size - size);
         }
     }
 
     /**
-     * {@inheritDoc}
+     * @param underflowed gets keys of capped lists which have to be refilled once word table is updated
      */
-    @Override
-    public void addWord(Word word) {
-        addWords(Arrays.asList(word));
+    private void unindex(int id, Word word, Set<String> underflowed) {
+        String wordNameLowercase = key(word.getName());
+
+        for (int i = this.minLength; i <= Math.min(wordNameLowercase.length(), this.depth); i++) {
+            String cacheKeyPartial = wordNameLowercase.substring(0, i);
+            WordIds cacheWordIds = editable(cacheKeyPartial);
+
+            int size = cacheWordIds.size;
+            cacheWordIds.remove(id, word, this.words);
+            this.prefixEntryCounts[i].add(cacheWordIds.size - size);
+
+            if (cacheWordIds.count == 0) {
+                uncache(cacheKeyPartial);
+            } else if (cacheWordIds.size < Math.min(this.capacities[i], cacheWordIds.count)) {
+                underflowed.add(cacheKeyPartial);
+            }
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * @return prefix list of the key owned by current batch (copied and put into prefix cache if it is shared with
+     * published snapshot) or null if there is none
      */
-    public String[] suggest(String selector, int limit) {
-        Set<String> suggestions = new LinkedHashSet<>();
+    private WordIds editable(String cacheKeyPartial) {
+        WordIds cacheWordIds = this.wordsCache.get(cacheKeyPartial);
 
-        if (selector.length() >= this.minLength) {
+        if (cacheWordIds == null || cacheWordIds.edit == this.edit) {
+            return cacheWordIds;
+        }
 
-            if (selector.length() > this.maxCachingLength) {
-                String cacheKeyPartial = selector.substring(0, this.maxCachingLength);
+        cacheWordIds = cacheWordIds.editable(this.edit);
+        this.wordsCache.put(cacheKeyPartial, cacheWordIds);
 
-                if (this.cache.get(cacheKeyPartial.toLowerCase()) != null) {
+        return cacheWordIds;
+    }
 
-                    Matcher matcher = Pattern.compile("(?<=[" + SuggestionConstants.WORDS_CACHE_SEPARATOR + "])" + selector + "[a-zA-Z-_ ]+?" + "(?=[" + SuggestionConstants.WORDS_CACHE_SEPARATOR + "])", Pattern.CASE_INSENSITIVE).matcher(this.cache.get(cacheKeyPartial.toLowerCase()));
+    /**
+     * Puts new prefix list into prefix cache
+     */
+    private void cache(String cacheKeyPartial, WordIds cacheWordIds) {
+        this.wordsCache.put(cacheKeyPartial, cacheWordIds);
+        this.prefixCounts[cacheKeyPartial.length()]++;
+        addNextLetter(cacheKeyPartial);
+    }
 
-                    String matchedWord;
-                    for (int i = 0; matcher.find() && i < limit; i++) {
-                        matchedWord = matcher.group();
+    /**
+     * Removes empty prefix list from prefix cache
+     */
+    private void uncache(String cacheKeyPartial) {
+        this.wordsCache.remove(cacheKeyPartial);
+        this.prefixCounts[cacheKeyPartial.length()]--;
+        removeNextLetter(cacheKeyPartial);
+    }
 
-                        suggestions.add(matchedWord);
+    /**
+     * @return how many words prefix list of the key keeps, only lists shorter than depth are capped
+     */
+    private int maximumSize(String cacheKeyPartial) {
+        if (cacheKeyPartial.length() >= this.depth) {
+            return Integer.MAX_VALUE;
+        }
 
-                    }
+        int capacity = this.capacities[cacheKeyPartial.length()];
+
+        return (int) Math.min(Integer.MAX_VALUE, (long) capacity + capacity / 4);
+    }
+
+    /**
+     * Rebuilds prefix lists which got shorter than their capacity from the word table, all of them in one pass. Every
+     * rebuild fills the headroom again, so it happens once per many removed words
+     *
+     * @param underflowed keys of the lists, lists which were removed or filled meanwhile are skipped
+     */
+    private void refill(Set<String> underflowed) {
+        Map<String, WordIds> refilled = new HashMap<>();
+        int longest = 0;
+
+        for (String cacheKeyPartial : underflowed) {
+            WordIds cacheWordIds = this.wordsCache.get(cacheKeyPartial);
+
+            if (cacheWordIds != null && cacheWordIds.size < Math.min(this.capacities[cacheKeyPartial.length()], cacheWordIds.count)) {
+                refilled.put(cacheKeyPartial, new WordIds(this.edit));
+                longest = Math.max(longest, cacheKeyPartial.length());
+            }
+        }
+
+        if (refilled.isEmpty()) {
+            return;
+        }
+
+        FoldedSelector prefix = new FoldedSelector();
+        for (int id = 0; id < this.wordsCount; id++) {
+            Word word = this.words.get(id);
+
+            if (word == null) {
+                continue;
+            }
+
+            String name = word.getName();
+            for (int i = this.minLength; i <= Math.min(name.length(), longest); i++) {
+                WordIds refilledWordIds = refilled.get(view(prefix, name, i));
+
+                if (refilledWordIds != null) {
+                    refilledWordIds.append(id);
                 }
-            } else {
-                if (this.cache.get(selector.toLowerCase()) != null) {
-                    Set<Word> cacheWords = this.wordsCache.get(selector.toLowerCase());
+            }
+        }
 
-                    int i = 0;
-                    for (Word cacheWord : cacheWords) {
+        for (Map.Entry<String, WordIds> entry : refilled.entrySet()) {
+            WordIds refilledWordIds = entry.getValue();
+            refilledWordIds.rank(this.words);
+            refilledWordIds.truncate(maximumSize(entry.getKey()));
 
-                        if (!(i < limit && i < cacheWords.size())) {
-                            break;
-                        }
+            WordIds cacheWordIds = editable(entry.getKey());
+            this.prefixEntryCounts[entry.getKey().length()].add(refilledWordIds.size - cacheWordIds.size);
+            cacheWordIds.ids = refilledWordIds.ids;
+            cacheWordIds.size = refilledWordIds.size;
+        }
+    }
+
+    /**
+     * Trims index until it fits memory budget or there is nothing left to trim. Every step either caps lists of one
+     * length to {@link #TRIMMED_BUCKET_CAPACITY} or drops the longest lists (so selectors of that length scan shorter
+     * ones), choosing the step which costs the fewest observed queries per saved byte
+     */
+    private void trim() {
+        while (indexMemory() > this.memoryBudget) {
+            // entries capping would drop, by prefix length
+            long[] capped = new long[this.depth];
+            // entries lists one shorter than depth would gain as the longest ones, which have to be complete
+            long completed = 0;
 
-                        suggestions.add(cacheWord.getName());
+            for (Map.Entry<String, WordIds> entry : this.wordsCache) {
+                int length = entry.getKey().length();
+                WordIds cacheWordIds = entry.getValue();
 
-                        i++;
-                    }
+                if (length < this.depth) {
+                    int capacity = Math.min(this.capacities[length], TRIMMED_BUCKET_CAPACITY);
+                    capped[length] += Math.max(0, cacheWordIds.size - (capacity + capacity / 4));
+                }
+
+                if (length == this.depth - 1) {
+                    completed += cacheWordIds.count - cacheWordIds.size;
+                }
+            }
+
+            int step = -1;
+            double cost = Double.MAX_VALUE;
+
+            for (int length = this.minLength; length < this.depth; length++) {
+                if (capped[length] > 0 && (this.queries[length].sum() + 1) / (4.0 * capped[length]) < cost) {
+                    step = length;
+                    cost = (this.queries[length].sum() + 1) / (4.0 * capped[length]);
+                }
+            }
+
+            if (this.depth > this.minLength) {
+                long queries = 0;
+                for (int length = this.depth; length <= this.maxCachingLength; length++) {
+                    queries += this.queries[length].sum();
                 }
+
+                long saved = prefixMemory(this.depth) - 4 * completed;
+                if (saved > 0 && (queries + 1) / (double) saved < cost) {
+                    step = this.depth;
+                }
+            }
+
+            if (step < 0) {
+                return;
+            }
+
+            if (step == this.depth) {
+                shorten();
+            } else {
+                cap(step);
+            }
+
+            this.trimCount++;
+        }
+    }
+
+    /**
+     * Caps prefix lists of given length to {@link #TRIMMED_BUCKET_CAPACITY}
+     */
+    private void cap(int length) {
+        this.capacities[length] = Math.min(this.capacities[length], TRIMMED_BUCKET_CAPACITY);
+
+        // prefix cache isn't changed while it is iterated
+        List<String> capped = new ArrayList<>();
+        for (Map.Entry<String, WordIds> entry : this.wordsCache) {
+            if (entry.getKey().length() == length && entry.getValue().size > maximumSize(entry.getKey())) {
+                capped.add(entry.getKey());
+            }
+        }
+
+        for (String cacheKeyPartial : capped) {
+            WordIds cacheWordIds = editable(cacheKeyPartial);
+            int size = cacheWordIds.size;
+
+            cacheWordIds.truncate(maximumSize(cacheKeyPartial));
+            this.prefixEntryCounts[length].add(cacheWordIds.size - size);
+        }
+    }
+
+    /**
+     * Drops the longest prefix lists, lists one shorter become the longest ones and are completed
+     */
+    private void shorten() {
+        int length = this.depth;
+        List<String> dropped = new ArrayList<>();
+        Set<String> incomplete = new HashSet<>();
+
+        for (Map.Entry<String, WordIds> entry : this.wordsCache) {
+            if (entry.getKey().length() == length) {
+                dropped.add(entry.getKey());
+            } else if (entry.getKey().length() == length - 1 && entry.getValue().size < entry.getValue().count) {
+                incomplete.add(entry.getKey());
+            }
+        }
+
+        for (String cacheKeyPartial : dropped) {
+            this.wordsCache.remove(cacheKeyPartial);
+            this.nextLetters.remove(cacheKeyPartial.substring(0, length - 1));
+        }
+
+        this.prefixCounts[length] = 0;
+        this.prefixEntryCounts[length].reset();
+
+        this.depth = length - 1;
+        this.capacities[this.depth] = Integer.MAX_VALUE;
+
+        refill(incomplete);
+    }
+
+    /**
+     * Estimated heap taken by prefix lists of given length, see {@link #getIndexMemory()}
+     *
+     * @param length prefix length
+     * @return estimated size in bytes, 0 if prefixes of this length aren't cached
+     */
+    public long getPrefixMemory(int length) {
+        if (length < 0 || length > this.maxCachingLength) {
+            return 0;
+        }
+
+        Snapshot snapshot = this.snapshot;
+
+        return (long) snapshot.prefixCounts[length] * PREFIX_OVERHEAD + 4 * snapshot.prefixEntryCounts[length];
+    }
+
+    /**
+     * Writer's version of {@link #getPrefixMemory(int)}, which includes changes of current batch
+     */
+    private long prefixMemory(int length) {
+        return (long) this.prefixCounts[length] * PREFIX_OVERHEAD + 4 * this.prefixEntryCounts[length].sum();
+    }
+
+    /**
+     * @return length of the longest cached prefixes, shorter than max caching length if index was trimmed to fit memory budget
+     */
+    public int getPrefixDepth() {
+        return this.snapshot.depth;
+    }
+
+    /**
+     * Adds last letter of new prefix list key to the letters following its parent prefix
+     */
+    private void addNextLetter(String cacheKeyPartial) {
+        if (cacheKeyPartial.length() <= this.minLength) {
+            return;
+        }
+
+        String parent = cacheKeyPartial.substring(0, cacheKeyPartial.length() - 1);
+        char letter = cacheKeyPartial.charAt(parent.length());
+        char[] letters = this.nextLetters.get(parent);
+
+        if (letters == null) {
+            this.nextLetters.put(parent, new char[] {letter});
+            return;
+        }
+
+        int position = -Arrays.binarySearch(letters, letter) - 1;
+        char[] added = new char[letters.length + 1];
+        System.arraycopy(letters, 0, added, 0, position);
+        added[position] = letter;
+        System.arraycopy(letters, position, added, position + 1, letters.length - position);
+
+        this.nextLetters.put(parent, added);
+    }
+
+    /**
+     * Removes last letter of removed prefix list key from the letters following its parent prefix
+     */
+    private void removeNextLetter(String cacheKeyPartial) {
+        if (cacheKeyPartial.length() <= this.minLength) {
+            return;
+        }
+
+        String parent = cacheKeyPartial.substring(0, cacheKeyPartial.length() - 1);
+        char[] letters = this.nextLetters.get(parent);
+
+        if (letters.length == 1) {
+            this.nextLetters.remove(parent);
+            return;
+        }
+
+        int position = Arrays.binarySearch(letters, cacheKeyPartial.charAt(parent.length()));
+        char[] removed = new char[letters.length - 1];
+        System.arraycopy(letters, 0, removed, 0, position);
+        System.arraycopy(letters, position + 1, removed, position, removed.length - position);
+
+        this.nextLetters.put(parent, removed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] suggest(String selector, int limit) {
+        long start = this.measured ? System.nanoTime() : 0;
+        Snapshot snapshot = this.snapshot;
+        WordIds cacheWordIds = limit > 0 ? lookup(snapshot, selector) : null;
+
+        if (cacheWordIds == null) {
+            if (this.measured) {
+                measure(snapshot, selector, null, start);
             }
 
+            return SuggestionConstants.TO_STRING_ARRAY_HELPER;
+        }
+
+        String[] suggestions = new String[Math.min(limit, cacheWordIds.size)];
+        int size = suggest(snapshot, selector, cacheWordIds, suggestions);
+
+        if (this.measured) {
+            measure(snapshot, selector, cacheWordIds, start);
         }
 
-        return suggestions.toArray(SuggestionConstants.TO_STRING_ARRAY_HELPER);
+        return size == suggestions.length ? suggestions : Arrays.copyOf(suggestions, size);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public WordRTL[] suggest(WordRTL selector, int limit) {
-        String[] suggestedWordsStringArray = this.suggest(selector.getName(), limit);
-        WordRTL[] suggestedWordsArray = new WordRTL[suggestedWordsStringArray.length];
+    public int suggest(CharSequence selector, String[] suggestions) {
+        long start = this.measured ? System.nanoTime() : 0;
+        Snapshot snapshot = this.snapshot;
+        WordIds cacheWordIds = suggestions.length > 0 ? lookup(snapshot, selector) : null;
+        int size = cacheWordIds == null ? 0 : suggest(snapshot, selector, cacheWordIds, suggestions);
 
-        for (int i = 0; i < suggestedWordsStringArray.length; i++) {
-            suggestedWordsArray[i] = new WordRTL(suggestedWordsStringArray[i], suggestedWordsStringArray.length - i);
+        if (this.measured) {
+            measure(snapshot, selector, cacheWordIds, start);
         }
 
-        return suggestedWordsArray;
+        return size;
+    }
+
+    private void measure(Snapshot snapshot, CharSequence selector, WordIds cacheWordIds, long start) {
+        long nanos = System.nanoTime() - start;
+
+        if (cacheWordIds == null) {
+            this.metrics.suggested(SuggestPath.MISSED, 0, nanos);
+        } else {
+            this.metrics.suggested(selector.length() > snapshot.depth ? SuggestPath.SCANNED : SuggestPath.CACHED, cacheWordIds.count, nanos);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String suggest(WordRTL selector, String separator, int limit) {
-        WordRTL[] suggestedWordsArray = this.suggest(selector, limit);
-
-        StringBuilder suggestedWordsString = new StringBuilder("");
+    public int getWordCount() {
+        return this.snapshot.wordIds.size();
+    }
 
-        for (int i = 0; i < suggestedWordsArray.length; i++) {
-            suggestedWordsString.append(suggestedWordsArray[i].getName());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPrefixCount() {
+        return this.snapshot.wordsCache.size();
+    }
 
-            if (i + 1 < suggestedWordsArray.length) {
-                suggestedWordsString.append(separator);
-            }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPrefixEntryCount() {
+        long prefixEntryCount = 0;
+        for (long prefixEntryCounts : this.snapshot.prefixEntryCounts) {
+            prefixEntryCount += prefixEntryCounts;
         }
 
-        return suggestedWordsString.toString();
+        return prefixEntryCount;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Estimate for 64 bit JVM with compressed references, spare capacity of the lists isn't counted
      */
     @Override
-    public String suggest(String selector, String separator, int limit) {
-        return String.join(separator, this.suggest(selector, limit));
+    public long getIndexMemory() {
+        Snapshot snapshot = this.snapshot;
+
+        long prefixEntryCount = 0;
+        for (long prefixEntryCounts : snapshot.prefixEntryCounts) {
+            prefixEntryCount += prefixEntryCounts;
+        }
+
+        return (long) snapshot.wordIds.size() * WORD_OVERHEAD + 2 * snapshot.nameLength + (long) snapshot.wordsCache.size() * PREFIX_OVERHEAD
+                + 4 * prefixEntryCount;
+    }
+
+    /**
+     * Writer's version of {@link #getIndexMemory()}, which includes changes of current batch
+     */
+    private long indexMemory() {
+        long prefixEntryCount = 0;
+        for (LongAdder prefixEntryCounts : this.prefixEntryCounts) {
+            prefixEntryCount += prefixEntryCounts.sum();
+        }
+
+        return (long) this.wordIds.size() * WORD_OVERHEAD + 2 * this.nameLength + (long) this.wordsCache.size() * PREFIX_OVERHEAD + 4 * prefixEntryCount;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Selectors shorter than max caching length read letters which follow them and prefix lists these letters lead to,
+     * so only one list per letter is touched. Longer selectors scan ranked words of their longest cached prefix, same as
+     * their suggestions do
      */
     @Override
-    public String[] suggestNextLetter(String selector, String[] suggestedWords) {
-        Set<String> suggestedNextLetters = new LinkedHashSet<>();
-        int nextLetterPosition = selector.length();
+    public NextLetter[] suggestNextLetter(String selector) {
+        if (selector.length() < this.minLength) {
+            return EMPTY_NEXT_LETTERS;
+        }
+
+        Snapshot snapshot = this.snapshot;
+        String key = key(selector);
+
+        if (key.length() < snapshot.depth) {
+            char[] letters = snapshot.nextLetters.get(key);
+
+            if (letters == null) {
+                return EMPTY_NEXT_LETTERS;
+            }
+
+            final Word[] best = new Word[letters.length];
+            Integer[] order = new Integer[letters.length];
+            NextLetter[] nextLetters = new NextLetter[letters.length];
+
+            for (int i = 0; i < letters.length; i++) {
+                WordIds cacheWordIds = snapshot.wordsCache.get(key + letters[i]);
+
+                best[i] = snapshot.words.get(cacheWordIds.ids[0]);
+                order[i] = i;
+                nextLetters[i] = new NextLetter(Character.toString(letters[i]), cacheWordIds.count, best[i].getPopularityIndex());
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    return RANKING.compare(best[i1], best[i2]);
+                }
+            });
+
+            NextLetter[] ranked = new NextLetter[letters.length];
+            for (int i = 0; i < order.length; i++) {
+                ranked[i] = nextLetters[order[i]];
+            }
+
+            return ranked;
+        }
+
+        WordIds cacheWordIds = lookup(snapshot, selector);
+
+        if (cacheWordIds == null) {
+            return EMPTY_NEXT_LETTERS;
+        }
+
+        // words are ranked, so the first word of every letter is the best one and letters come in ranking order
+        Map<Character, int[]> letters = new LinkedHashMap<>();
+        for (int i = 0; i < cacheWordIds.size; i++) {
+            Word word = snapshot.words.get(cacheWordIds.ids[i]);
 
-        String nextLetter;
-        for (int i = 0; i < suggestedWords.length; i++) {
-            if (suggestedWords[i].length() > nextLetterPosition) {
-                suggestedNextLetters.add(Character.toString(suggestedWords[i].charAt(nextLetterPosition)));
+            if (word.getName().length() > selector.length() && startsWith(word.getName(), selector)) {
+                Character letter = FoldedSelector.fold(nextLetter(word.getName(), selector.length()));
+                int[] counts = letters.get(letter);
+
+                if (counts == null) {
+                    letters.put(letter, new int[] {1, word.getPopularityIndex()});
+                } else {
+                    counts[0]++;
+                }
             }
+        }
+
+        NextLetter[] nextLetters = new NextLetter[letters.size()];
+        int i = 0;
+        for (Map.Entry<Character, int[]> entry : letters.entrySet()) {
+            nextLetters[i++] = new NextLetter(entry.getKey().toString(), entry.getValue()[0], entry.getValue()[1]);
+        }
+
+        return nextLetters;
+    }
+
+    /**
+     * @param snapshot index to look selector up in
+     * @param selector word to which we suggest match
+     * @return ranked ids of words of the longest cached selector prefix or null if there are none
+     */
+    private WordIds lookup(Snapshot snapshot, CharSequence selector) {
+        if (selector.length() < this.minLength) {
+            return null;
+        }
+
+        if (this.budgeted) {
+            this.queries[Math.min(selector.length(), this.maxCachingLength)].increment();
+        }
+
+        return snapshot.wordsCache.get(view(LOOKUP_KEYS.get(), selector, Math.min(selector.length(), snapshot.depth)));
+    }
+
+    private int suggest(Snapshot snapshot, CharSequence selector, WordIds cacheWordIds, String[] suggestions) {
+        int size = 0;
+
+        if (selector.length() > snapshot.depth) {
+            // words are already ranked, so first "limit" matching words are the best ones
+            // (only words longer than selector are matched, same as always for selectors longer than max caching length)
+            for (int i = 0; i < cacheWordIds.size && size < suggestions.length; i++) {
+                String name = snapshot.words.get(cacheWordIds.ids[i]).getName();
+
+                if ((selector.length() <= this.maxCachingLength || name.length() > selector.length()) && startsWith(name, selector)) {
+                    suggestions[size++] = name;
+                }
+            }
+        } else {
+            for (; size < cacheWordIds.size && size < suggestions.length; size++) {
+                suggestions[size] = snapshot.words.get(cacheWordIds.ids[size]).getName();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Selectors longer than max caching length match only longer words
+     */
+    @Override
+    protected boolean matches(String name, String selector) {
+        return (selector.length() <= this.maxCachingLength || name.length() > selector.length()) && startsWith(name, selector);
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Counts steps index was trimmed with to fit memory budget. Steps are counted before trimmed index is published
+     */
+    @Override
+    protected long trimCount() {
+        return this.trimCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Capped prefix list (see {@link com.pryzach.suggestions.constants.SuggestionConfiguration#getBucketCapacity()}) serves
+     * fewer words than limit without holding every match
+     */
+    @Override
+    protected boolean holdsEveryMatch(String selector, String[] suggestions, int limit) {
+        if (suggestions.length >= limit || selector.length() < this.minLength) {
+            return suggestions.length < limit;
         }
 
-        return suggestedNextLetters.toArray(SuggestionConstants.TO_STRING_ARRAY_HELPER);
+        Snapshot snapshot = this.snapshot;
+        WordIds cacheWordIds = snapshot.wordsCache.get(view(LOOKUP_KEYS.get(), selector, Math.min(selector.length(), snapshot.depth)));
+
+        return cacheWordIds == null || cacheWordIds.size == cacheWordIds.count;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Key of RTL dictionary is reversed, so words ending with selector are keyed by its prefixes
      */
     @Override
-    public String suggestNextLetter(String selector, String suggestedWords, String separator) {
-        return String.join(separator, this.suggestNextLetter(selector, suggestedWords.split("[" + separator + "]")));
+    protected String key(String selector) {
+        return this.rtl ? FoldedSelector.foldReversed(selector) : FoldedSelector.fold(selector);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Letter which precedes selector, for RTL dictionary
+     */
+    @Override
+    protected char nextLetter(String name, int length) {
+        return this.rtl ? name.charAt(name.length() - 1 - length) : name.charAt(length);
+    }
+
+    /**
+     * @return view of the key of first "length" selector chars (last ones, for RTL dictionary)
+     */
+    private CharSequence view(FoldedSelector view, CharSequence selector, int length) {
+        return this.rtl ? view.ofReversed(selector, length) : view.of(selector, length);
+    }
+
+    /**
+     * @return true if name starts with selector (ends with, for RTL dictionary), ignoring case
+     */
+    private boolean startsWith(String name, CharSequence selector) {
+        return this.rtl ? FoldedSelector.endsWith(name, selector) : FoldedSelector.startsWith(name, selector);
+    }
+
+    /**
+     * Published index, never changed
+     */
+    private static final class Snapshot {
+        private final SnapshotMap<String, WordIds> wordsCache;
+        private final SnapshotMap<String, char[]> nextLetters;
+        private final SnapshotMap<String, Integer> wordIds;
+        private final SnapshotArray<Word> words;
+        private final int depth;
+
+        private final int[] prefixCounts;
+        private final long[] prefixEntryCounts;
+        private final long nameLength;
+
+        private Snapshot(SnapshotMap<String, WordIds> wordsCache, SnapshotMap<String, char[]> nextLetters, SnapshotMap<String, Integer> wordIds,
+                         SnapshotArray<Word> words, int depth, int[] prefixCounts, long[] prefixEntryCounts, long nameLength) {
+            this.wordsCache = wordsCache;
+            this.nextLetters = nextLetters;
+            this.wordIds = wordIds;
+            this.words = words;
+            this.depth = depth;
+            this.prefixCounts = prefixCounts;
+            this.prefixEntryCounts = prefixEntryCounts;
+            this.nameLength = nameLength;
+        }
     }
 
+    /**
+     * Growable primitive list of word ids, ranked by words they point to. List may be capped: it keeps only the best
+     * words then, which are still ranked prefix of all the words of the list
+     */
+    private static final class WordIds {
+        /**
+         * Batch which owns the list, lists of published snapshot are never changed
+         */
+        private final Object edit;
+
+        private int[] ids = new int[2];
+        private int size;
+
+        /**
+         * Amount of all the words of the list, bigger than size if list is capped
+         */
+        private int count;
+
+        /**
+         * @param edit batch which creates the list
+         */
+        private WordIds(Object edit) {
+            this.edit = edit;
+        }
+
+        /**
+         * @param edit current batch
+         * @return this list if it is owned by current batch, otherwise its copy owned by current batch
+         */
+        private WordIds editable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+
+            WordIds copy = new WordIds(edit);
+            copy.ids = this.ids.clone();
+            copy.size = this.size;
+            copy.count = this.count;
+
+            return copy;
+        }
+
+        /**
+         * @param maximumSize how many words list keeps
+         */
+        private void add(int id, Word word, SnapshotArray<Word> words, int maximumSize) {
+            int position = -search(word, words) - 1;
+            this.count++;
+
+            if (position == this.size && this.count - 1 > this.size) {
+                // worse than every kept word of capped list
+                return;
+            }
+
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.ids.length + (this.ids.length >> 1) + 1);
+            }
+
+            System.arraycopy(this.ids, position, this.ids, position + 1, this.size - position);
+            this.ids[position] = id;
+            this.size++;
+
+            truncate(maximumSize);
+        }
+
+        /**
+         * Appends id to the end of the list, caller keeps list ranked
+         */
+        private void append(int id) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.ids.length + (this.ids.length >> 1) + 1);
+            }
+
+            this.ids[this.size++] = id;
+            this.count++;
+        }
+
+        /**
+         * Sorts appended ids by rank of the words they point to
+         */
+        private void rank(final SnapshotArray<Word> words) {
+            Integer[] ranked = new Integer[this.size];
+            for (int i = 0; i < this.size; i++) {
+                ranked[i] = this.ids[i];
+            }
+
+            Arrays.sort(ranked, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer id1, Integer id2) {
+                    return RANKING.compare(words.get(id1), words.get(id2));
+                }
+            });
+
+            for (int i = 0; i < this.size; i++) {
+                this.ids[i] = ranked[i];
+            }
+        }
+
+        /**
+         * Merges complete ranked list of ids which aren't in this list yet
+         */
+        private void merge(WordIds added, SnapshotArray<Word> words) {
+            int[] merged = new int[this.size + added.size];
+
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < this.size && j < added.size) {
+                if (RANKING.compare(words.get(this.ids[i]), words.get(added.ids[j])) <= 0) {
+                    merged[k++] = this.ids[i++];
+                } else {
+                    merged[k++] = added.ids[j++];
+                }
+            }
+
+            System.arraycopy(this.ids, i, merged, k, this.size - i);
+
+            if (this.count == this.size) {
+                System.arraycopy(added.ids, j, merged, k + this.size - i, added.size - j);
+                this.size = merged.length;
+            } else {
+                // words worse than every kept word of capped list are not kept
+                this.size = k + this.size - i;
+            }
+
+            this.ids = merged;
+            this.count += added.count;
+        }
+
+        /**
+         * Drops the worst words to keep list within given size, spare capacity is released if it got much bigger than list
+         */
+        private void truncate(int maximumSize) {
+            this.size = Math.min(this.size, maximumSize);
+
+            if (this.ids.length > 2 * this.size + 2) {
+                this.ids = Arrays.copyOf(this.ids, this.size);
+            }
+        }
+
+        private void remove(int id, Word word, SnapshotArray<Word> words) {
+            int position = search(word, words);
+            this.count--;
+
+            if (position < 0) {
+                // capped list doesn't keep the word
+                return;
+            }
+
+            System.arraycopy(this.ids, position + 1, this.ids, position, this.size - position - 1);
+            this.size--;
+        }
+
+        /**
+         * Binary search by rank of the word
+         */
+        private int search(Word word, SnapshotArray<Word> words) {
+            int low = 0;
+            int high = this.size - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = RANKING.compare(words.get(this.ids[middle]), word);
+
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+
+            return -(low + 1);
+        }
+    }
 }
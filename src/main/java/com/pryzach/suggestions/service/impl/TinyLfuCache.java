@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache with W-TinyLFU eviction. New entries get into small LRU window first. Entry leaving the window is
+ * admitted into main segmented LRU only if it was seen more often than entry main segment would evict instead, so
+ * one-off keys (scans) don't push out popular ones. Main segment is split into probation and protected parts: entry
+ * accessed while on probation becomes protected.
+ *
+ * Not thread safe
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+final class TinyLfuCache<K, V> {
+    private final int maximumSize;
+    private final int windowMaximumSize;
+    private final int protectedMaximumSize;
+
+    private final Map<Object, Node<K, V>> nodes = new HashMap<>();
+    private final FrequencySketch sketch;
+
+    /**
+     * Queues, every one is circular list with sentinel: next is the most recently used, previous is the least
+     */
+    private final Node<K, V> window = new Node<>(null, null);
+    private final Node<K, V> probation = new Node<>(null, null);
+    private final Node<K, V> protect = new Node<>(null, null);
+
+    private int windowSize;
+    private int protectedSize;
+
+    private long evictionCount;
+
+    /**
+     * @param maximumSize maximal amount of entries
+     */
+    TinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size should be positive [" + maximumSize + "]");
+        }
+
+        this.maximumSize = maximumSize;
+        this.windowMaximumSize = Math.max(1, maximumSize / 100);
+        this.protectedMaximumSize = (maximumSize - this.windowMaximumSize) * 4 / 5;
+
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Looks value up, hit or miss counts toward key popularity
+     *
+     * @param key key
+     * @return value or null if it isn't cached
+     */
+    V get(Object key) {
+        this.sketch.increment(key.hashCode());
+
+        Node<K, V> node = this.nodes.get(key);
+
+        if (node == null) {
+            return null;
+        }
+
+        access(node);
+
+        return node.value;
+    }
+
+    /**
+     * @param key key
+     * @param value value
+     * @return key evicted to keep cache bounded (may be the put key itself) or null if nothing was evicted
+     */
+    K put(K key, V value) {
+        Node<K, V> node = this.nodes.get(key);
+
+        if (node != null) {
+            node.value = value;
+            access(node);
+            return null;
+        }
+
+        node = new Node<>(key, value);
+        this.nodes.put(key, node);
+
+        node.link(this.window);
+        this.windowSize++;
+
+        if (this.windowSize > this.windowMaximumSize) {
+            Node<K, V> candidate = this.window.previous;
+            candidate.unlink();
+            this.windowSize--;
+
+            return admit(candidate);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param key key
+     * @return removed value or null if it wasn't cached
+     */
+    V remove(Object key) {
+        Node<K, V> node = this.nodes.remove(key);
+
+        if (node == null) {
+            return null;
+        }
+
+        unlink(node);
+
+        return node.value;
+    }
+
+    void clear() {
+        this.nodes.clear();
+
+        this.window.unlink();
+        this.probation.unlink();
+        this.protect.unlink();
+
+        this.windowSize = 0;
+        this.protectedSize = 0;
+    }
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    long evictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * Admits entry which left the window into main segment or evicts it, whichever was seen less often
+     */
+    private K admit(Node<K, V> candidate) {
+        if (this.nodes.size() <= this.maximumSize) {
+            candidate.link(this.probation);
+            return null;
+        }
+
+        Node<K, V> victim = this.probation.previous != this.probation ? this.probation.previous : this.protect.previous;
+
+        this.evictionCount++;
+
+        if (victim != this.protect && this.sketch.frequency(candidate.key.hashCode()) > this.sketch.frequency(victim.key.hashCode())) {
+            unlink(victim);
+            this.nodes.remove(victim.key);
+
+            candidate.link(this.probation);
+
+            return victim.key;
+        }
+
+        this.nodes.remove(candidate.key);
+
+        return candidate.key;
+    }
+
+    private void access(Node<K, V> node) {
+        if (node.queue == this.protect || node.queue == this.window) {
+            node.unlink();
+            node.link(node.queue);
+            return;
+        }
+
+        // accessed on probation, promoting to protected and demoting least recently used protected entry if it's full
+        node.unlink();
+        node.link(this.protect);
+        this.protectedSize++;
+
+        if (this.protectedSize > this.protectedMaximumSize) {
+            Node<K, V> demoted = this.protect.previous;
+            demoted.unlink();
+            this.protectedSize--;
+
+            demoted.link(this.probation);
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue == this.window) {
+            this.windowSize--;
+        } else if (node.queue == this.protect) {
+            this.protectedSize--;
+        }
+
+        node.unlink();
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+
+        private Node<K, V> queue;
+        private Node<K, V> previous = this;
+        private Node<K, V> next = this;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * Links node as the most recently used one of the queue
+         */
+        private void link(Node<K, V> queue) {
+            this.queue = queue;
+            this.previous = queue;
+            this.next = queue.next;
+
+            queue.next.previous = this;
+            queue.next = this;
+        }
+
+        /**
+         * Unlinks node from its queue, unlinking sentinel empties the queue
+         */
+        private void unlink() {
+            this.previous.next = this.next;
+            this.next.previous = this.previous;
+
+            this.previous = this;
+            this.next = this;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions;
+
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.SuggestionServiceImpl;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public class DictionaryLoaderTest extends TestCase {
+
+    public void testLoadFile() throws Exception {
+        Path file = Files.createTempFile("dictionary", ".tsv");
+
+        try {
+            Files.write(file, Arrays.asList("\uFEFFsuccess\t10", "c++ (programming language)\t5", "", "успех\t7", "successor"), StandardCharsets.UTF_8);
+
+            SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+            Assert.assertEquals(4, DictionaryLoader.load(suggestionService, file));
+            Assert.assertArrayEquals(new String[]{"success", "successor"}, suggestionService.suggest("succ", 10));
+            Assert.assertArrayEquals(new String[]{"c++ (programming language)"}, suggestionService.suggest("c++ (", 10));
+            Assert.assertArrayEquals(new String[]{"успех"}, suggestionService.suggest("Ус", 10));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testLoadInChunks() throws Exception {
+        StringBuilder dictionary = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            dictionary.append("word").append(i).append('\t').append(i).append('\n');
+        }
+
+        final List<Integer> chunks = new ArrayList<>();
+        SuggestionService suggestionService = new SuggestionServiceImpl() {
+            @Override
+            public void addWords(Collection<Word> words) {
+                chunks.add(words.size());
+                super.addWords(words);
+            }
+        };
+
+        Assert.assertEquals(25, DictionaryLoader.load(suggestionService, new ByteArrayInputStream(dictionary.toString().getBytes(StandardCharsets.UTF_8)), 10));
+        Assert.assertEquals(Arrays.asList(10, 10, 5), chunks);
+        Assert.assertArrayEquals(new String[]{"word24", "word23"}, suggestionService.suggest("word", 2));
+    }
+
+    public void testInvalidDictionary() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        try {
+            DictionaryLoader.load(suggestionService, new ByteArrayInputStream("success\t10\nfailure\tmany\n".getBytes(StandardCharsets.UTF_8)));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("[2]"));
+        }
+
+        try {
+            DictionaryLoader.load(suggestionService, new ByteArrayInputStream(new byte[]{'a', (byte) 0xc3, '\n'}));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected, not UTF-8
+        }
+    }
+}
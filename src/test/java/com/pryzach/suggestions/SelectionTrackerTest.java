@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions;
+
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SelectionTrackerTest extends TestCase {
+
+    public void testSelectionsChangeRanking() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 5), new Word("succubus", 1)));
+
+        SelectionTracker selectionTracker = new SelectionTracker(suggestionService, 1);
+
+        for (int i = 0; i < 7; i++) {
+            selectionTracker.select("successor");
+        }
+        selectionTracker.select("succubus");
+        selectionTracker.select("not-a-word");
+
+        Assert.assertArrayEquals(new String[]{"success", "successor", "succubus"}, suggestionService.suggest("succ", 10));
+        Assert.assertEquals(2, selectionTracker.rerank());
+        Assert.assertArrayEquals(new String[]{"successor", "success", "succubus"}, suggestionService.suggest("succ", 10));
+        Assert.assertEquals(12, suggestionService.getWord("successor").getPopularityIndex());
+        Assert.assertEquals(2, suggestionService.getWord("succubus").getPopularityIndex());
+
+        // nothing selected, nothing changes without decay
+        Assert.assertEquals(0, selectionTracker.rerank());
+        Assert.assertEquals(12, suggestionService.getWord("successor").getPopularityIndex());
+    }
+
+    public void testDecay() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 5)));
+
+        SelectionTracker selectionTracker = new SelectionTracker(suggestionService, 0.5);
+
+        for (int i = 0; i < 8; i++) {
+            selectionTracker.select("successor");
+        }
+
+        List<Integer> popularity = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            selectionTracker.rerank();
+            popularity.add(suggestionService.getWord("successor").getPopularityIndex());
+        }
+
+        // score halves on every re-rank until word gets back to its original popularity
+        Assert.assertEquals(Arrays.asList(13, 9, 7, 6, 6, 5), popularity);
+        Assert.assertArrayEquals(new String[]{"success", "successor"}, suggestionService.suggest("succ", 10));
+    }
+
+    public void testConcurrentSelectionsAndScheduledRerank() throws Exception {
+        final SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+        suggestionService.addWords(Arrays.asList(new Word("success", 0), new Word("successor", 0)));
+
+        final SelectionTracker selectionTracker = new SelectionTracker(suggestionService, 1);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            ScheduledFuture<?> rerank = selectionTracker.schedule(executor, 1, TimeUnit.MILLISECONDS);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < 10000; j++) {
+                            selectionTracker.select("successor");
+                            suggestionService.suggest("succ", 10);
+                        }
+                    }
+                }));
+            }
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            rerank.cancel(false);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        selectionTracker.rerank();
+
+        Assert.assertEquals(40000, suggestionService.getWord("successor").getPopularityIndex());
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("succ", 10));
+    }
+
+    public void testReadOnlyServiceIsRejected() throws Exception {
+        Path file = Files.createTempFile("suggestions", ".index");
+
+        try {
+            RadixTreeSuggestionServiceImpl radixTree = new RadixTreeSuggestionServiceImpl();
+            radixTree.addWord(new Word("success", 10));
+            radixTree.save(file);
+
+            new SelectionTracker(SuggestionFactory.mapSuggestionService(file), 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testRerankWhileSuggestingOnPrefixCache() throws Exception {
+        // default engine with capped lists, so re-rank moves words in and out of them while readers suggest
+        final SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().bucketCapacity(5).build());
+        final List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            words.add(new Word("word" + i, i % 100));
+        }
+        suggestionService.addWords(words);
+
+        final SelectionTracker selectionTracker = new SelectionTracker(suggestionService, 0.5);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            ScheduledFuture<?> rerank = selectionTracker.schedule(executor, 1, TimeUnit.MILLISECONDS);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final int offset = i;
+
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < 20000; j++) {
+                                selectionTracker.select(words.get((offset * 7919 + j) % words.size()).getName());
+
+                                String[] suggestions = suggestionService.suggest("wor", 5);
+                                if (suggestions.length != 5 || new HashSet<>(Arrays.asList(suggestions)).size() != 5) {
+                                    throw new AssertionError(Arrays.toString(suggestions));
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failure.set(e);
+                        }
+                    }
+                }));
+            }
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            rerank.cancel(false);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertNull(failure.get());
+
+        // once re-rank is done, capped lists hold the best words of the dictionary
+        selectionTracker.rerank();
+
+        List<Word> ranked = new ArrayList<>();
+        for (Word word : words) {
+            ranked.add(suggestionService.getWord(word.getName()));
+        }
+        Collections.sort(ranked, Collections.<Word>reverseOrder());
+
+        String[] expected = new String[5];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = ranked.get(i).getName();
+        }
+
+        Assert.assertArrayEquals(expected, suggestionService.suggest("wor", 5));
+    }
+}
@@ -16,13 +16,106 @@
 
 package com.pryzach.suggestions;
 
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.model.Word;
 import com.pryzach.suggestions.service.SuggestionService;
+import com.pryzach.suggestions.service.impl.RadixTreeSuggestionServiceImpl;
+import com.pryzach.suggestions.service.impl.SortedArraySuggestionServiceImpl;
+import com.pryzach.suggestions.service.impl.SuggestionServiceImpl;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+
 public class SuggestionFactoryTest extends TestCase {
 
     public void testGetSuggestionService() throws Exception {
         Assert.assertTrue(SuggestionFactory.getSuggestionService() instanceof SuggestionService);
     }
-}
\ No newline at end of file
+
+    public void testGetSuggestionServiceByEngine() throws Exception {
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionEngine.PREFIX_CACHE) instanceof SuggestionServiceImpl);
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE) instanceof RadixTreeSuggestionServiceImpl);
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY) instanceof SortedArraySuggestionServiceImpl);
+    }
+
+    public void testGetSuggestionServiceByConfiguration() throws Exception {
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().build()) instanceof SuggestionServiceImpl);
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().engine(SuggestionEngine.RADIX_TREE).build()) instanceof RadixTreeSuggestionServiceImpl);
+        Assert.assertTrue(SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().engine(SuggestionEngine.SORTED_ARRAY).build()) instanceof SortedArraySuggestionServiceImpl);
+
+        // instances with different settings live side by side
+        SuggestionService shortSelectors = SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().minLength(1).build());
+        SuggestionService longSelectors = SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().minLength(3).prefixDepth(4).build());
+
+        shortSelectors.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20)));
+        longSelectors.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20)));
+
+        Assert.assertEquals(2, shortSelectors.suggest("su", 10).length);
+        Assert.assertEquals(0, longSelectors.suggest("su", 10).length);
+        Assert.assertEquals(2, longSelectors.suggest("succe", 10).length);
+    }
+
+    public void testInvalidConfiguration() throws Exception {
+        SuggestionConfiguration.Builder builder = SuggestionConfiguration.builder();
+
+        try {
+            builder.minLength(0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.prefixDepth(0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.bucketCapacity(0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.engine(null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            builder.direction(null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // RTL dictionaries are kept by prefix cache engine only
+        try {
+            SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().engine(SuggestionEngine.RADIX_TREE).direction(TextDirection.RTL).build());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder().engine(SuggestionEngine.SORTED_ARRAY).direction(TextDirection.RTL).build());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // failed settings don't change the builder
+        SuggestionConfiguration configuration = builder.build();
+        Assert.assertEquals(SuggestionEngine.PREFIX_CACHE, configuration.getEngine());
+        Assert.assertEquals(6, configuration.getPrefixDepth());
+        Assert.assertEquals(Integer.MAX_VALUE, configuration.getBucketCapacity());
+        Assert.assertEquals(TextDirection.LTR, configuration.getDirection());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class HistogramTest extends TestCase {
+    private final Random random = new Random();
+
+    public void testSmallValuesAreExact() throws Exception {
+        Histogram histogram = new Histogram();
+
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(50, histogram.getCount());
+        Assert.assertEquals(50, histogram.getMax());
+        Assert.assertEquals(25.5, histogram.getMean(), 0.0001);
+        Assert.assertEquals(25, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(50, histogram.getValueAtPercentile(100));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    public void testPercentilesWithinPrecision() throws Exception {
+        Histogram histogram = new Histogram();
+
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+
+            Assert.assertTrue(percentile + ": " + expected + " vs " + actual, actual >= expected && actual <= expected + expected / 16 + 1);
+        }
+
+        Assert.assertEquals(values[values.length - 1], histogram.getMax());
+        Assert.assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    }
+
+    public void testBuckets() throws Exception {
+        Assert.assertEquals(0, Histogram.index(0));
+        Assert.assertEquals(63, Histogram.index(63));
+        Assert.assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+
+        // every value is in the bucket which highest value isn't less than the value, and previous bucket ends below it
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = Histogram.index(value);
+
+            Assert.assertTrue(Histogram.highestValue(index) >= value);
+            Assert.assertTrue(index == 0 || Histogram.highestValue(index - 1) < value);
+        }
+
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, new Histogram().getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.metrics;
+
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.impl.SuggestionServiceImpl;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+public class RecordingSuggestionMetricsTest extends TestCase {
+    public void testSuggestPaths() throws Exception {
+        RecordingSuggestionMetrics metrics = new RecordingSuggestionMetrics();
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(1, 3, metrics);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("failure", 5)));
+        Assert.assertEquals(1, metrics.getIndexCount());
+        Assert.assertEquals(3, metrics.getIndexedWordCount());
+
+        suggestionService.suggest("suc", 10);
+        suggestionService.suggest("succ", 10);
+        suggestionService.suggest(new StringBuilder("fail"), new String[10]);
+        suggestionService.suggest("x", 10);
+
+        Assert.assertEquals(4, metrics.getSuggestCount());
+        Assert.assertEquals(1, metrics.getCachedCount());
+        Assert.assertEquals(2, metrics.getScannedCount());
+        Assert.assertEquals(1, metrics.getMissedCount());
+        Assert.assertEquals(2, metrics.getBucketSizeMax());
+        Assert.assertTrue(metrics.getSuggestLatencyMax() > 0);
+        Assert.assertTrue(metrics.getSuggestLatency99() <= metrics.getSuggestLatencyMax());
+        Assert.assertEquals(2, metrics.getScannedLatency().getCount());
+    }
+
+    public void testIndexGauges() throws Exception {
+        RecordingSuggestionMetrics metrics = new RecordingSuggestionMetrics();
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(1, 3, metrics);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("so", 5)));
+
+        // s, su, suc are shared, so is the only other prefix
+        Assert.assertEquals(3, metrics.getWordCount());
+        Assert.assertEquals(4, metrics.getPrefixCount());
+        Assert.assertEquals(8, metrics.getPrefixEntryCount());
+        long memory = metrics.getIndexMemory();
+        Assert.assertTrue(memory > 0);
+
+        suggestionService.removeWord(new Word("successor", 0));
+        suggestionService.updatePopularity(new Word("so", 30));
+
+        Assert.assertEquals(2, metrics.getWordCount());
+        Assert.assertEquals(4, metrics.getPrefixCount());
+        Assert.assertEquals(5, metrics.getPrefixEntryCount());
+        Assert.assertTrue(metrics.getIndexMemory() < memory);
+    }
+
+    public void testJmx() throws Exception {
+        RecordingSuggestionMetrics metrics = new RecordingSuggestionMetrics();
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(1, 6, metrics);
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("failure", 5)));
+        suggestionService.suggest("succ", 10);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("test dictionary");
+
+        try {
+            Assert.assertEquals(1L, server.getAttribute(name, "SuggestCount"));
+            Assert.assertEquals(1L, server.getAttribute(name, "CachedCount"));
+            Assert.assertEquals(2, server.getAttribute(name, "WordCount"));
+            Assert.assertEquals(1L, server.getAttribute(name, "IndexCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.service.SuggestionService;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CachingSuggestionServiceImplTest extends TestCase {
+    private final Random random = new Random();
+
+    public void testSuggestEngine() throws Exception {
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(SuggestionFactory.getSuggestionService(), 100);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("failure", 5)));
+
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertEquals(0, suggestionService.getHitCount());
+        Assert.assertEquals(1, suggestionService.getMissCount());
+
+        // same selector in different case, smaller limit and (as all of the matches are cached) bigger limit
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("SUCC", 10));
+        Assert.assertArrayEquals(new String[]{"successor"}, suggestionService.suggest("succ", 1));
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("succ", 20));
+        Assert.assertEquals(3, suggestionService.getHitCount());
+        Assert.assertEquals(1, suggestionService.getMissCount());
+
+        // only part of the matches is cached, bigger limit has to be looked up
+        Assert.assertArrayEquals(new String[]{"successor"}, suggestionService.suggest("su", 1));
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("su", 2));
+        Assert.assertEquals(3, suggestionService.getMissCount());
+
+        // returned suggestions can be changed by caller
+        suggestionService.suggest("succ", 10)[0] = null;
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("succ", 10));
+
+        String[] buffer = new String[1];
+        Assert.assertEquals(1, suggestionService.suggest(new StringBuilder("fail"), buffer));
+        Assert.assertEquals("failure", buffer[0]);
+    }
+
+    public void testAddedWordsInvalidateOnlyTheirPrefixes() throws Exception {
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE), 100);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("failure", 5)));
+
+        suggestionService.suggest("succ", 10);
+        suggestionService.suggest("fail", 10);
+        suggestionService.suggest("successful", 10);
+        Assert.assertEquals(3, suggestionService.size());
+
+        suggestionService.addWord(new Word("Succeed", 20));
+
+        Assert.assertEquals(2, suggestionService.size());
+        Assert.assertArrayEquals(new String[]{"Succeed", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"failure"}, suggestionService.suggest("fail", 10));
+        Assert.assertEquals(0, suggestionService.suggest("successful", 10).length);
+        Assert.assertEquals(2, suggestionService.getHitCount());
+    }
+
+    public void testRemovedAndUpdatedWordsInvalidateTheirPrefixes() throws Exception {
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE), 100);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("failure", 5)));
+
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"failure"}, suggestionService.suggest("fail", 10));
+
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("success", 30)));
+        Assert.assertArrayEquals(new String[]{"success", "successor"}, suggestionService.suggest("succ", 10));
+
+        Assert.assertTrue(suggestionService.removeWord(new Word("success", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("success", 0)));
+        Assert.assertArrayEquals(new String[]{"successor"}, suggestionService.suggest("succ", 10));
+
+        Assert.assertArrayEquals(new String[]{"failure"}, suggestionService.suggest("fail", 10));
+        Assert.assertEquals(1, suggestionService.getHitCount());
+    }
+
+    public void testRtlDictionaryInvalidatesSuffixes() throws Exception {
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(SuggestionFactory.getSuggestionService(
+                SuggestionConfiguration.builder().direction(TextDirection.RTL).build()), 100);
+
+        suggestionService.addWords(Arrays.asList(new Word("نجاح", 10), new Word("הצלחה", 5)));
+
+        Assert.assertArrayEquals(new String[]{"نجاح"}, suggestionService.suggest("ح", 10));
+        Assert.assertArrayEquals(new String[]{"הצלחה"}, suggestionService.suggest("חה", 10));
+
+        suggestionService.addWord(new Word("نجح", 11));
+
+        Assert.assertEquals(1, suggestionService.size());
+        Assert.assertArrayEquals(new String[]{"نجح", "نجاح"}, suggestionService.suggest("ح", 10));
+        Assert.assertArrayEquals(new String[]{"הצלחה"}, suggestionService.suggest("חה", 10));
+        Assert.assertEquals(1, suggestionService.getHitCount());
+    }
+
+    public void testTrimmedIndexDropsWholeCache() throws Exception {
+        // words of the second batch start with other letters than the first one, so they invalidate none of cached selectors
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String first = RandomStringUtils.random(1, i < 10000 ? "abcdefghijklm" : "nopqrstuvwxyz");
+            words.add(new Word(first + RandomStringUtils.randomAlphabetic(randomInt(2, 9)), randomInt(1, 100)));
+        }
+
+        SuggestionServiceImpl unbounded = new SuggestionServiceImpl(SuggestionConfiguration.builder().build());
+        unbounded.addWords(words);
+
+        SuggestionServiceImpl budgeted = new SuggestionServiceImpl(SuggestionConfiguration.builder()
+                .memoryBudget(unbounded.getIndexMemory() - 100000).build());
+        // cache is bigger than batches, so batches alone invalidate only prefixes of their words
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(budgeted, 20000);
+        suggestionService.addWords(words.subList(0, 10000));
+
+        // long selectors are asked the most, so trimming caps lists of short prefixes instead of dropping the longest ones
+        for (Word word : words.subList(0, 10000)) {
+            suggestionService.suggest(word.getName().substring(0, Math.min(word.getName().length(), 6)), 10);
+        }
+        for (char letter = 'a'; letter <= 'm'; letter++) {
+            Assert.assertEquals(20, suggestionService.suggest(Character.toString(letter), 20).length);
+        }
+
+        suggestionService.addWords(words.subList(10000, words.size()));
+
+        Assert.assertTrue(budgeted.trimCount() > 0);
+        for (char letter = 'a'; letter <= 'm'; letter++) {
+            Assert.assertArrayEquals(budgeted.suggest(Character.toString(letter), 20), suggestionService.suggest(Character.toString(letter), 20));
+        }
+    }
+
+    public void testFrequentSelectorsStayCached() throws Exception {
+        CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE), 100);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // hot selector is asked every now and then during scan through one-off selectors, scan shouldn't evict it
+        suggestionService.suggest("hot", 10);
+
+        for (int i = 0; i < words.size(); i++) {
+            if (i % 50 == 0) {
+                long hitCount = suggestionService.getHitCount();
+                suggestionService.suggest("hot", 10);
+
+                Assert.assertEquals(hitCount + 1, suggestionService.getHitCount());
+            }
+
+            suggestionService.suggest(words.get(i).getName(), 10);
+        }
+
+        Assert.assertTrue(suggestionService.size() <= 100);
+        Assert.assertTrue(suggestionService.getEvictionCount() > 0);
+    }
+
+    public void testSameResultsAsDecoratedService() throws Exception {
+        SuggestionService prefixCache = SuggestionFactory.getSuggestionService();
+        SuggestionService suggestionService = SuggestionFactory.getCachingSuggestionService(SuggestionFactory.getSuggestionService(), 500);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(1, 10)), randomInt(1, 100)));
+        }
+
+        // words are added while suggestions are cached, so invalidation is exercised too
+        for (int i = 0; i < words.size(); i += 100) {
+            prefixCache.addWords(words.subList(i, i + 100));
+            suggestionService.addWords(words.subList(i, i + 100));
+
+            for (int j = 0; j < 200; j++) {
+                String name = words.get(randomInt(0, i + 100)).getName();
+                String selector = name.substring(0, randomInt(1, Math.min(3, name.length()) + 1));
+                int limit = randomInt(1, 20);
+
+                Assert.assertArrayEquals(prefixCache.suggest(selector, limit), suggestionService.suggest(selector, limit));
+            }
+        }
+    }
+
+    public void testConcurrentHitsAndInvalidations() throws Exception {
+        SuggestionService prefixCache = SuggestionFactory.getSuggestionService();
+        final CachingSuggestionServiceImpl suggestionService = new CachingSuggestionServiceImpl(prefixCache, 50);
+
+        final List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 10)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // readers mostly hit a few hot selectors while writer keeps invalidating some of them
+        final String[] selectors = new String[100];
+        for (int i = 0; i < selectors.length; i++) {
+            selectors[i] = words.get(i % 10).getName().substring(0, 2);
+        }
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+
+                    try {
+                        while (writing.get()) {
+                            String selector = random.nextInt(10) == 0 ? words.get(random.nextInt(words.size())).getName().substring(0, 3) : selectors[random.nextInt(selectors.length)];
+                            Assert.assertTrue(suggestionService.suggest(selector, 10).length > 0);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            Word word = words.get(randomInt(0, words.size()));
+            suggestionService.updatePopularity(new Word(word.getName(), randomInt(1, 100)));
+        }
+
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertTrue(suggestionService.getHitCount() > 0);
+        Assert.assertTrue(suggestionService.size() <= 50);
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, 2);
+            Assert.assertArrayEquals(prefixCache.suggest(selector, 10), suggestionService.suggest(selector, 10));
+        }
+    }
+
+    private int randomInt(int start, int end) {
+        return random.nextInt(end - start) + start;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.model.WordRTL;
+import com.pryzach.suggestions.service.SuggestionService;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class MappedSuggestionServiceImplTest extends TestCase {
+    private final Random random = new Random();
+
+    private Path file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = Files.createTempFile("suggestions", ".index");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    public void testSuggestEngine() throws Exception {
+        RadixTreeSuggestionServiceImpl radixTree = new RadixTreeSuggestionServiceImpl();
+        radixTree.addWords(Arrays.asList(new Word("success", 10), new Word("succubus-long_one here", 1), new Word("success-very-popular", 100), new Word("SucCEss_with-different case", 2), new Word("успех", 10)));
+        radixTree.addWord(new WordRTL("نجاح", 10));
+        radixTree.save(file);
+
+        SuggestionService suggestionService = SuggestionFactory.mapSuggestionService(file);
+
+        Assert.assertArrayEquals(new String[]{"success-very-popular", "success", "SucCEss_with-different case"}, suggestionService.suggest("SUCCESS", 10));
+        Assert.assertArrayEquals(new String[]{"-", "_"}, suggestionService.suggestNextLetter("success", suggestionService.suggest("success", 3)));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("-", 1, 100), new NextLetter("_", 1, 2)}, suggestionService.suggestNextLetter("success"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("e", 3, 100), new NextLetter("u", 1, 1)}, suggestionService.suggestNextLetter("Succ"));
+        Assert.assertArrayEquals(new String[]{"успех"}, suggestionService.suggest("Ус", 10));
+        Assert.assertEquals("نجاح", suggestionService.suggest(new WordRTL("اح"), "|", 10));
+        Assert.assertEquals(0, suggestionService.suggest("successful", 10).length);
+        Assert.assertEquals(0, suggestionService.suggest("x", 10).length);
+
+        Assert.assertEquals(2, suggestionService.getWord("SucCEss_with-different case").getPopularityIndex());
+        Assert.assertNull(suggestionService.getWord("succes"));
+        Assert.assertNull(suggestionService.getWord("success-very"));
+    }
+
+    public void testSameResultsAsRadixTree() throws Exception {
+        // small top size, so most of the queries go through best first search
+        RadixTreeSuggestionServiceImpl radixTree = new RadixTreeSuggestionServiceImpl(1, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        radixTree.addWords(words);
+        radixTree.save(file);
+
+        SuggestionService suggestionService = new MappedSuggestionServiceImpl(file);
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+            int limit = randomInt(1, 30);
+
+            Assert.assertArrayEquals(radixTree.suggest(selector, limit), suggestionService.suggest(selector, limit));
+        }
+    }
+
+    public void testIndexNextLetterSameAsBruteForce() throws Exception {
+        RadixTreeSuggestionServiceImpl radixTree = new RadixTreeSuggestionServiceImpl();
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.random(randomInt(1, 8), "abcdeABC");
+            words.put(wordString, new Word(wordString, randomInt(1, 100000)));
+        }
+        radixTree.addWords(words.values());
+        radixTree.save(file);
+
+        SuggestionService suggestionService = new MappedSuggestionServiceImpl(file);
+
+        for (String name : words.keySet()) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            Assert.assertArrayEquals(SuggestionServiceImplTest.nextLetters(words.values(), selector), suggestionService.suggestNextLetter(selector));
+        }
+    }
+
+    public void testSuggestIntoBuffer() throws Exception {
+        RadixTreeSuggestionServiceImpl radixTree = new RadixTreeSuggestionServiceImpl(1, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        radixTree.addWords(words);
+        radixTree.save(file);
+
+        SuggestionService suggestionService = new MappedSuggestionServiceImpl(file);
+        String[] buffer = new String[10];
+
+        for (Word word : words) {
+            StringBuilder selector = new StringBuilder(word.getName().substring(0, randomInt(1, word.getName().length() + 1)));
+
+            int size = suggestionService.suggest(selector, buffer);
+            Assert.assertArrayEquals(radixTree.suggest(selector.toString(), buffer.length), Arrays.copyOf(buffer, size));
+        }
+    }
+
+    public void testReadOnly() throws Exception {
+        new RadixTreeSuggestionServiceImpl().save(file);
+        SuggestionService suggestionService = new MappedSuggestionServiceImpl(file);
+
+        Assert.assertEquals(0, suggestionService.suggest("a", 10).length);
+
+        try {
+            suggestionService.addWord(new Word("success", 10));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        try {
+            suggestionService.removeWord(new Word("success", 10));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        try {
+            suggestionService.updatePopularity(new Word("success", 10));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private int randomInt(int start, int end) {
+        return random.nextInt(end - start) + start;
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.model.WordRTL;
+import com.pryzach.suggestions.service.SuggestionService;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RadixTreeSuggestionServiceImplTest extends TestCase {
+    private final Random random = new Random();
+
+    public void testSuggestEngine() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        Assert.assertEquals(0, suggestionService.suggest("succes", 10).length);
+
+        suggestionService.addWord(new Word("success", 10));
+        suggestionService.addWord(new Word("confusuccess", 10));
+        suggestionService.addWord(new Word("succubus-long_one here", 1));
+        suggestionService.addWord(new Word("sucks-if-this-will-appear-in-results", 10));
+
+        Assert.assertArrayEquals(new String[]{"success"}, suggestionService.suggest("succes", 10));
+        Assert.assertArrayEquals(new String[]{"success", "succubus-long_one here"}, suggestionService.suggest("succ", 10));
+        Assert.assertEquals("success|succubus-long_one here", suggestionService.suggest("succ", "|", 10));
+
+        suggestionService.addWord(new Word("success-very-popular", 100));
+        suggestionService.addWord(new Word("success-very-long", 101));
+        suggestionService.addWord(new Word("success-very-boring", 1));
+
+        Assert.assertArrayEquals(new String[]{"success-very-long", "success-very-popular", "success"}, suggestionService.suggest("succ", 3));
+        Assert.assertArrayEquals(new String[]{"success-very-long", "success-very-popular"}, suggestionService.suggest("success-very-", 2));
+        Assert.assertArrayEquals(new String[]{"l", "p"}, suggestionService.suggestNextLetter("success-very-", suggestionService.suggest("success-very-", 2)));
+
+        // selectors longer than any edge or word
+        Assert.assertEquals(0, suggestionService.suggest("success-very-long-and-more", 2).length);
+        Assert.assertArrayEquals(new String[]{"success-very-long"}, suggestionService.suggest("success-very-long", 2));
+
+        // case insensitive
+        suggestionService.addWord(new Word("SucCEss_with-different case", 2));
+        suggestionService.addWord(new Word("success with whitespaces", 1));
+
+        Assert.assertArrayEquals(new String[]{"success-very-long", "success-very-popular", "success", "SucCEss_with-different case", "success-very-boring"}, suggestionService.suggest("SUCCESS", 5));
+        Assert.assertArrayEquals(new String[]{"SucCEss_with-different case"}, suggestionService.suggest("success_", 5));
+    }
+
+    public void testSameWordIsKeptOnce() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("success", 12), new Word("Success", 11), new Word("success", 1)));
+
+        Assert.assertArrayEquals(new String[]{"success", "Success"}, suggestionService.suggest("s", 10));
+    }
+
+    public void testRegexMetacharacters() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        suggestionService.addWord(new Word("c++ (programming language)", 10));
+        suggestionService.addWord(new Word("c# [language]", 9));
+
+        Assert.assertArrayEquals(new String[]{"c++ (programming language)"}, suggestionService.suggest("c++ (pro", 10));
+        Assert.assertArrayEquals(new String[]{"c# [language]"}, suggestionService.suggest("c# [", 10));
+    }
+
+    public void testInternationalSupport() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        suggestionService.addWord(new Word("éxito", 10));
+        suggestionService.addWord(new Word("успех", 10));
+        suggestionService.addWord(new Word("успешный-результат", 5));
+
+        Assert.assertArrayEquals(new String[]{"éxito"}, suggestionService.suggest("ÉXI", 10));
+        Assert.assertArrayEquals(new String[]{"успешный-результат"}, suggestionService.suggest("успешный-рез", 10));
+
+        suggestionService.addWord(new WordRTL("نجاح", 10));
+        suggestionService.addWord(new WordRTL("نجح", 11));
+
+        Assert.assertEquals("نجح" + "|" + "نجاح", suggestionService.suggest(new WordRTL("ح"), "|", 10));
+    }
+
+    public void testSameResultsAsPrefixCache() throws Exception {
+        SuggestionService radixTree = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+        SuggestionService prefixCache = SuggestionFactory.getSuggestionService(SuggestionEngine.PREFIX_CACHE);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.randomAlphabetic(randomInt(3, 10));
+            words.put(wordString, new Word(wordString, randomInt(1, 100)));
+        }
+
+        radixTree.addWords(words.values());
+        prefixCache.addWords(words.values());
+
+        for (String wordString : words.keySet()) {
+            // prefix cache keeps full ranking up to 6 chars
+            String selector = wordString.substring(0, Math.min(wordString.length(), randomInt(1, 7)));
+
+            Assert.assertArrayEquals(prefixCache.suggest(selector, 10), radixTree.suggest(selector, 10));
+        }
+    }
+
+    public void testBestFirstSearchBeyondTopCompletions() throws Exception {
+        // every node keeps only 2 best words, everything above is served by best first search
+        SuggestionService radixTree = new RadixTreeSuggestionServiceImpl(1, 2);
+        SuggestionService prefixCache = SuggestionFactory.getSuggestionService(SuggestionEngine.PREFIX_CACHE);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String wordString = RandomStringUtils.randomAlphabetic(randomInt(1, 6));
+            words.put(wordString, new Word(wordString, randomInt(1, 100)));
+        }
+
+        radixTree.addWords(words.values());
+        prefixCache.addWords(words.values());
+
+        for (String wordString : words.keySet()) {
+            String selector = wordString.substring(0, randomInt(1, wordString.length() + 1));
+            int limit = randomInt(1, 20);
+
+            Assert.assertArrayEquals(prefixCache.suggest(selector, limit), radixTree.suggest(selector, limit));
+        }
+    }
+
+    public void testSuggestIntoBuffer() throws Exception {
+        SuggestionService suggestionService = new RadixTreeSuggestionServiceImpl(1, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // buffers both within and beyond top completions
+        String[] small = new String[3];
+        String[] large = new String[20];
+        StringBuilder selector = new StringBuilder();
+
+        for (Word word : words) {
+            selector.setLength(0);
+            selector.append(word.getName(), 0, randomInt(1, word.getName().length() + 1));
+
+            for (String[] buffer : new String[][]{small, large}) {
+                String[] suggestions = suggestionService.suggest(selector.toString(), buffer.length);
+                Assert.assertEquals(suggestions.length, suggestionService.suggest(selector, buffer));
+                Assert.assertArrayEquals(suggestions, Arrays.copyOf(buffer, suggestions.length));
+            }
+        }
+
+        Assert.assertEquals(0, suggestionService.suggest("", new String[0]));
+    }
+
+    public void testBatchSuggest() throws Exception {
+        SuggestionService suggestionService = new RadixTreeSuggestionServiceImpl(1, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        String[] selectors = new String[3000];
+        int[] limits = new int[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            String name = words.get(randomInt(0, 200)).getName();
+
+            selectors[i] = name.substring(0, randomInt(1, name.length() + 1));
+            limits[i] = randomInt(0, 30);
+        }
+
+        String[][] suggestions = suggestionService.suggest(selectors, limits);
+
+        for (int i = 0; i < selectors.length; i++) {
+            Assert.assertArrayEquals(selectors[i], suggestionService.suggest(selectors[i], limits[i]), suggestions[i]);
+        }
+
+        try {
+            suggestionService.suggest(new String[]{"a"}, new int[]{});
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testMorePopularWordUpdatesTopCompletions() throws Exception {
+        SuggestionService suggestionService = new RadixTreeSuggestionServiceImpl(1, 2);
+
+        suggestionService.addWords(Arrays.asList(new Word("alpha", 3), new Word("alps", 2), new Word("altitude", 1)));
+        Assert.assertArrayEquals(new String[]{"alpha", "alps"}, suggestionService.suggest("al", 2));
+
+        suggestionService.addWord(new Word("altitude", 5));
+        Assert.assertArrayEquals(new String[]{"altitude", "alpha"}, suggestionService.suggest("al", 2));
+        Assert.assertArrayEquals(new String[]{"altitude", "alpha", "alps"}, suggestionService.suggest("a", 3));
+        Assert.assertArrayEquals(new String[]{"alpha", "alps"}, suggestionService.suggest("alp", 3));
+    }
+
+    public void testRemoveWordAndUpdatePopularity() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Success", 5), new Word("succubus", 1)));
+
+        Assert.assertTrue(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("succes", 0)));
+        Assert.assertArrayEquals(new String[]{"success", "Success", "succubus"}, suggestionService.suggest("succ", 10));
+
+        // word can become less popular too
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("success", 2)));
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("succubus", 30)));
+        Assert.assertFalse(suggestionService.updatePopularity(new Word("successor", 30)));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"Success", "success"}, suggestionService.suggest("SUCCESS", 10));
+
+        suggestionService.addWord(new Word("successor", 3));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "successor", "success"}, suggestionService.suggest("s", 10));
+    }
+
+    public void testRemoveWordAndUpdatePopularitySameAsRebuilt() throws Exception {
+        SuggestionService suggestionService = new RadixTreeSuggestionServiceImpl(1, 2);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String wordString = RandomStringUtils.randomAlphabetic(randomInt(1, 6));
+            words.put(wordString, new Word(wordString, randomInt(1, 100)));
+        }
+        suggestionService.addWords(words.values());
+
+        List<String> names = new ArrayList<>(words.keySet());
+        for (int i = 0; i < names.size(); i += 2) {
+            String name = names.get(i);
+
+            if (random.nextBoolean()) {
+                Assert.assertTrue(suggestionService.removeWord(words.remove(name)));
+            } else {
+                words.put(name, new Word(name, randomInt(1, 100)));
+                Assert.assertTrue(suggestionService.updatePopularity(words.get(name)));
+            }
+        }
+
+        SuggestionService rebuilt = new RadixTreeSuggestionServiceImpl(1, 2);
+        rebuilt.addWords(words.values());
+
+        for (String name : names) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+            int limit = randomInt(1, 20);
+
+            Assert.assertArrayEquals(rebuilt.suggest(selector, limit), suggestionService.suggest(selector, limit));
+        }
+    }
+
+    public void testFuzzySuggest() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl();
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("access", 30), new Word("sucker", 5), new Word("failure", 1)));
+
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggestFuzzy("Succes", 0, 10));
+        // missed, replaced and extra letters
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggestFuzzy("sucess", 1, 10));
+        Assert.assertArrayEquals(new String[]{"access", "successor", "success"}, suggestionService.suggestFuzzy("sacces", 1, 10));
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, suggestionService.suggestFuzzy("succcess", 1, 10));
+        // exact matches first
+        Assert.assertArrayEquals(new String[]{"successor", "success", "sucker"}, suggestionService.suggestFuzzy("succ", 1, 10));
+        Assert.assertArrayEquals(new String[]{"successor", "success", "sucker", "access"}, suggestionService.suggestFuzzy("succ", 2, 10));
+        Assert.assertArrayEquals(new String[]{"successor"}, suggestionService.suggestFuzzy("succ", 2, 1));
+        Assert.assertEquals(0, suggestionService.suggestFuzzy("zzzz", 2, 10).length);
+    }
+
+    public void testFuzzySuggestSameAsBruteForce() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl(1, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            words.add(new Word(RandomStringUtils.random(randomInt(1, 8), "abcdeABC"), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // same name is kept once, with the highest popularity
+        Map<String, Word> unique = new HashMap<>();
+        for (Word word : words) {
+            Word existing = unique.get(word.getName());
+
+            if (existing == null || existing.getPopularityIndex() < word.getPopularityIndex()) {
+                unique.put(word.getName(), word);
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            final String selector = RandomStringUtils.random(randomInt(1, 6), "abcdeABC");
+            final int maxEdits = randomInt(0, 3);
+            int limit = randomInt(1, 30);
+
+            List<Word> matches = new ArrayList<>();
+            for (Word word : unique.values()) {
+                if (prefixDistance(selector, word.getName()) <= maxEdits) {
+                    matches.add(word);
+                }
+            }
+
+            Collections.sort(matches, new Comparator<Word>() {
+                @Override
+                public int compare(Word word1, Word word2) {
+                    int distance = prefixDistance(selector, word1.getName()) - prefixDistance(selector, word2.getName());
+
+                    return distance != 0 ? distance : word2.compareTo(word1);
+                }
+            });
+
+            List<String> expected = new ArrayList<>();
+            for (Word word : matches.subList(0, Math.min(limit, matches.size()))) {
+                expected.add(word.getName());
+            }
+
+            Assert.assertEquals(selector + " " + maxEdits, expected, Arrays.asList(suggestionService.suggestFuzzy(selector, maxEdits, limit)));
+        }
+    }
+
+    /**
+     * Smallest Levenshtein distance between selector and any prefix of the name, ignoring case
+     */
+    private static int prefixDistance(String selector, String name) {
+        String s = selector.toLowerCase();
+        String n = name.toLowerCase();
+        int[][] distances = new int[n.length() + 1][s.length() + 1];
+
+        for (int j = 0; j <= s.length(); j++) {
+            distances[0][j] = j;
+        }
+
+        int result = distances[0][s.length()];
+        for (int i = 1; i <= n.length(); i++) {
+            distances[i][0] = i;
+
+            for (int j = 1; j <= s.length(); j++) {
+                distances[i][j] = Math.min(Math.min(distances[i - 1][j], distances[i][j - 1]) + 1, distances[i - 1][j - 1] + (n.charAt(i - 1) == s.charAt(j - 1) ? 0 : 1));
+            }
+
+            result = Math.min(result, distances[i][s.length()]);
+        }
+
+        return result;
+    }
+
+    public void testSession() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl();
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Sucker", 5), new Word("failure", 1)));
+
+        RadixTreeSuggestionServiceImpl.Session session = suggestionService.newSession();
+        // selector is shorter than min length
+        Assert.assertEquals(0, session.suggest(10).length);
+
+        session.append('S');
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("u", 3, 20)}, session.suggestNextLetter());
+
+        session.append("uc");
+        Assert.assertEquals("Suc", session.getSelector());
+        Assert.assertArrayEquals(new String[]{"successor", "success", "Sucker"}, session.suggest(10));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("c", 2, 20), new NextLetter("k", 1, 5)}, session.suggestNextLetter());
+
+        session.append("cess");
+        Assert.assertArrayEquals(new String[]{"successor", "success"}, session.suggest(10));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("o", 1, 20)}, session.suggestNextLetter());
+
+        // typo leads nowhere until it is deleted
+        session.append("x").append("o");
+        Assert.assertEquals(0, session.suggest(10).length);
+        Assert.assertEquals(0, session.suggestNextLetter().length);
+        session.delete().delete();
+
+        String[] buffer = new String[1];
+        Assert.assertEquals(1, session.suggest(buffer));
+        Assert.assertEquals("successor", buffer[0]);
+
+        // session follows changes of the service
+        suggestionService.addWord(new Word("successful", 30));
+        Assert.assertArrayEquals(new String[]{"successful", "successor", "success"}, session.suggest(10));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("f", 1, 30), new NextLetter("o", 1, 20)}, session.suggestNextLetter());
+
+        session.clear();
+        session.delete();
+        Assert.assertEquals("", session.getSelector());
+        Assert.assertArrayEquals(new String[]{"failure"}, session.append('f').suggest(10));
+    }
+
+    public void testSessionSameAsSuggest() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl(2, 10);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            words.add(new Word(RandomStringUtils.random(randomInt(1, 8), "abcdAB"), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words.subList(0, 1000));
+
+        RadixTreeSuggestionServiceImpl.Session session = suggestionService.newSession();
+        StringBuilder selector = new StringBuilder();
+
+        for (int i = 0; i < 5000; i++) {
+            if (selector.length() > 0 && random.nextInt(3) == 0) {
+                selector.setLength(selector.length() - 1);
+                session.delete();
+            } else {
+                char c = "abcdeAB".charAt(random.nextInt(7));
+                selector.append(c);
+                session.append(c);
+            }
+
+            if (i == 2500) {
+                suggestionService.addWords(words.subList(1000, 2000));
+            }
+
+            int limit = randomInt(1, 30);
+            Assert.assertEquals(selector.toString(), session.getSelector());
+            Assert.assertArrayEquals(suggestionService.suggest(selector.toString(), limit), session.suggest(limit));
+        }
+    }
+
+    public void testIndexNextLetterSameAsBruteForce() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl();
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.random(randomInt(1, 8), "abcdeABC");
+            words.put(wordString, new Word(wordString, randomInt(1, 100000)));
+        }
+        suggestionService.addWords(words.values());
+
+        for (String name : words.keySet()) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            Assert.assertArrayEquals(SuggestionServiceImplTest.nextLetters(words.values(), selector), suggestionService.suggestNextLetter(selector));
+        }
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl(2, 3);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        words.add(new Word("успешный-результат", 5));
+        suggestionService.addWords(words);
+
+        Path file = Files.createTempFile("suggestions", ".index");
+        try {
+            suggestionService.save(file);
+            SuggestionService loaded = SuggestionFactory.loadSuggestionService(file);
+
+            // min length is kept
+            Assert.assertEquals(0, loaded.suggest("a", 10).length);
+            Assert.assertArrayEquals(new String[]{"успешный-результат"}, loaded.suggest("Успешный", 10));
+
+            for (Word word : words) {
+                String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+                int limit = randomInt(1, 10);
+
+                Assert.assertArrayEquals(suggestionService.suggest(selector, limit), loaded.suggest(selector, limit));
+            }
+
+            // loaded tree is still updatable
+            loaded.addWord(new Word("successfully-loaded", 1000));
+            Assert.assertEquals("successfully-loaded", loaded.suggest("su", 1)[0]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testSaveReplacesIndexAtOnce() throws Exception {
+        RadixTreeSuggestionServiceImpl suggestionService = new RadixTreeSuggestionServiceImpl();
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20)));
+
+        Path file = Files.createTempFile("suggestions", ".index");
+        try {
+            suggestionService.save(file);
+            SuggestionService mapped = SuggestionFactory.mapSuggestionService(file);
+
+            // new index is moved in place of the old one, so file which is already mapped isn't written over
+            suggestionService.addWord(new Word("succubus", 30));
+            suggestionService.save(file);
+
+            Assert.assertArrayEquals(new String[]{"successor", "success"}, mapped.suggest("succ", 10));
+            Assert.assertArrayEquals(new String[]{"succubus", "successor", "success"}, RadixTreeSuggestionServiceImpl.load(file).suggest("succ", 10));
+            Assert.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testLoadInvalidFile() throws Exception {
+        Path file = Files.createTempFile("suggestions", ".index");
+        try {
+            Files.write(file, "definitely not an index file".getBytes("UTF-8"));
+            RadixTreeSuggestionServiceImpl.load(file);
+
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testConcurrentReadsDuringUpdates() throws Exception {
+        final SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        suggestionService.addWord(new Word("batch", 1));
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // every batch adds pair of words with the same prefix, readers should never see only one of them
+                for (int i = 0; i < 2000; i++) {
+                    suggestionService.addWords(Arrays.asList(new Word("batch" + i + "-one", i), new Word("batch" + i + "-two", i)));
+                }
+
+                writing.set(false);
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (writing.get()) {
+                        String selector = "batch" + randomInt(0, 2000) + "-";
+                        int matched = suggestionService.suggest(selector, 10).length;
+
+                        if (matched != 0 && matched != 2) {
+                            failure.set(selector + " matched " + matched);
+                        }
+
+                        if (suggestionService.suggest("batch", 10).length == 0) {
+                            failure.set("batch matched nothing");
+                        }
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(2, suggestionService.suggest("batch1999-", 10).length);
+    }
+
+    private int randomInt(int start, int end) {
+        return random.nextInt(end - start) + start;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.pryzach.suggestions.service.impl;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+
+import java.util.*;
+
+public class SnapshotMapTest extends TestCase {
+    private final Random random = new Random();
+
+    public void testSameAsHashMap() throws Exception {
+        SnapshotMap<String, Integer> map = new SnapshotMap<String, Integer>().editable(new Object());
+        Map<String, Integer> expected = new HashMap<>();
+
+        // "Aa" and "BB" have the same hash code, so do all of their concatenations
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            keys.add(RandomStringUtils.randomAlphabetic(randomInt(1, 4)));
+        }
+        for (int i = 0; i < 64; i++) {
+            keys.add(Integer.toBinaryString(64 + i).replace("0", "Aa").replace("1", "BB"));
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            String key = keys.get(randomInt(0, keys.size()));
+
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+
+            if (i % 5000 == 0) {
+                // next batch
+                map = map.editable(new Object());
+            }
+        }
+
+        Assert.assertEquals(expected.size(), map.size());
+        for (String key : keys) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+
+        Map<String, Integer> iterated = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : map) {
+            Assert.assertNull(iterated.put(entry.getKey(), entry.getValue()));
+        }
+        Assert.assertEquals(expected, iterated);
+
+        // case folded view finds the same values as its string
+        Assert.assertEquals(map.get("aaaa"), map.get(new FoldedSelector().of("AaAa", 4)));
+    }
+
+    public void testPublishedVersionNeverChanges() throws Exception {
+        SnapshotMap<String, Integer> map = new SnapshotMap<String, Integer>().editable(new Object());
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, i);
+        }
+
+        SnapshotMap<String, Integer> published = map;
+        map = map.editable(new Object());
+
+        for (int i = 0; i < 1000; i += 2) {
+            map.remove("key" + i);
+            map.put("key" + (i + 1), -i);
+            map.put("other" + i, i);
+        }
+
+        Assert.assertEquals(1000, published.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), published.get("key" + i));
+            Assert.assertNull(published.get("other" + i));
+        }
+
+        Assert.assertEquals(1000, map.size());
+        Assert.assertNull(map.get("key0"));
+        Assert.assertEquals(Integer.valueOf(0), map.get("key1"));
+    }
+
+    private int randomInt(int start, int end) {
+        return random.nextInt(end - start) + start;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 Zachar Prychoda
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.pryzach.suggestions.service.impl;
+
+import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionEngine;
+import com.pryzach.suggestions.model.NextLetter;
+import com.pryzach.suggestions.model.Word;
+import com.pryzach.suggestions.model.WordRTL;
+import com.pryzach.suggestions.service.SuggestionService;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SortedArraySuggestionServiceImplTest extends TestCase {
+    private final Random random = new Random();
+
+    public void testSuggestEngine() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        Assert.assertEquals(0, suggestionService.suggest("succes", 10).length);
+
+        suggestionService.addWord(new Word("success", 10));
+        suggestionService.addWords(Arrays.asList(new Word("confusuccess", 10), new Word("succubus-long_one here", 1), new Word("sucks-if-this-will-appear-in-results", 10)));
+
+        Assert.assertArrayEquals(new String[]{"success"}, suggestionService.suggest("succes", 10));
+        Assert.assertArrayEquals(new String[]{"success", "succubus-long_one here"}, suggestionService.suggest("succ", 10));
+        Assert.assertEquals("e|u", suggestionService.suggestNextLetter("succ", suggestionService.suggest("succ", "|", 10), "|"));
+
+        suggestionService.addWords(Arrays.asList(new Word("success-very-popular", 100), new Word("success-very-long", 101), new Word("success-very-boring", 1)));
+
+        Assert.assertArrayEquals(new String[]{"success-very-long", "success-very-popular", "success"}, suggestionService.suggest("succ", 3));
+        Assert.assertArrayEquals(new String[]{"success-very-long", "success-very-popular"}, suggestionService.suggest("SUCCESS-VERY-", 2));
+        Assert.assertEquals(0, suggestionService.suggest("success-very-long-and-more", 2).length);
+        Assert.assertEquals(0, suggestionService.suggest("zzz", 2).length);
+    }
+
+    public void testSameWordIsKeptOnce() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("success", 12), new Word("Success", 11)));
+        suggestionService.addWord(new Word("success", 1));
+
+        Assert.assertArrayEquals(new String[]{"success", "Success"}, suggestionService.suggest("s", 10));
+    }
+
+    public void testRegexMetacharactersAndInternationalSupport() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        suggestionService.addWord(new Word("c++ (programming language)", 10));
+        suggestionService.addWord(new Word("успешный-результат", 5));
+        suggestionService.addWord(new WordRTL("نجاح", 10));
+
+        Assert.assertArrayEquals(new String[]{"c++ (programming language)"}, suggestionService.suggest("c++ (pro", 10));
+        Assert.assertArrayEquals(new String[]{"успешный-результат"}, suggestionService.suggest("Успешный-рез", 10));
+        Assert.assertEquals("نجاح", suggestionService.suggest(new WordRTL("اح"), "|", 10));
+    }
+
+    public void testSameResultsAsRadixTree() throws Exception {
+        SuggestionService sortedArray = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+        SuggestionService radixTree = SuggestionFactory.getSuggestionService(SuggestionEngine.RADIX_TREE);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+
+        // bulk and incremental updates should end up the same
+        sortedArray.addWords(words.subList(0, 10000));
+        sortedArray.addWords(words.subList(10000, words.size()));
+        radixTree.addWords(words);
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+
+            Assert.assertArrayEquals(radixTree.suggest(selector, 10), sortedArray.suggest(selector, 10));
+        }
+    }
+
+    public void testSuggestIntoBuffer() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("succubus", 1), new Word("Successor", 20), new Word("failure", 5)));
+
+        String[] buffer = new String[2];
+
+        Assert.assertEquals(2, suggestionService.suggest(new StringBuilder("SUCC"), buffer));
+        Assert.assertArrayEquals(new String[]{"Successor", "success"}, buffer);
+        Assert.assertEquals(1, suggestionService.suggest(new StringBuilder("fail"), buffer));
+        Assert.assertEquals("failure", buffer[0]);
+        Assert.assertEquals(0, suggestionService.suggest(new StringBuilder("zzz"), buffer));
+    }
+
+    public void testRemoveWordAndUpdatePopularity() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Success", 5), new Word("succubus", 1)));
+
+        Assert.assertTrue(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("succes", 0)));
+        Assert.assertArrayEquals(new String[]{"success", "Success", "succubus"}, suggestionService.suggest("succ", 10));
+
+        // word can become less popular too
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("success", 2)));
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("succubus", 30)));
+        Assert.assertFalse(suggestionService.updatePopularity(new Word("successor", 30)));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"Success", "success"}, suggestionService.suggest("SUCCESS", 10));
+
+        suggestionService.addWord(new Word("successor", 3));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "successor", "success"}, suggestionService.suggest("s", 10));
+
+        Assert.assertEquals(2, suggestionService.getWord("success").getPopularityIndex());
+        Assert.assertEquals(5, suggestionService.getWord("Success").getPopularityIndex());
+        Assert.assertNull(suggestionService.getWord("succes"));
+    }
+
+    public void testBatchRemoveAndUpdateSameAsWordByWord() throws Exception {
+        SortedArraySuggestionServiceImpl batched = new SortedArraySuggestionServiceImpl();
+        SuggestionService wordByWord = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 8)), randomInt(1, 100)));
+        }
+        batched.addWords(words);
+        wordByWord.addWords(words);
+
+        // unknown and repeated words are skipped the same way single word updates skip them
+        List<Word> removed = new ArrayList<>(words.subList(0, 1000));
+        removed.add(new Word("missing-word", 0));
+        removed.add(words.get(0));
+
+        List<Word> updated = new ArrayList<>();
+        for (Word word : words.subList(900, 2000)) {
+            updated.add(new Word(word.getName(), randomInt(1, 100)));
+        }
+
+        int removedCount = 0;
+        for (Word word : removed) {
+            removedCount += wordByWord.removeWord(word) ? 1 : 0;
+        }
+        int updatedCount = 0;
+        for (Word word : updated) {
+            updatedCount += wordByWord.updatePopularity(word) ? 1 : 0;
+        }
+
+        Assert.assertEquals(removedCount, batched.removeWords(removed));
+        Assert.assertEquals(updatedCount, batched.updatePopularity(updated));
+        Assert.assertEquals(0, batched.removeWords(Collections.singletonList(new Word("missing-word", 0))));
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+
+            Assert.assertArrayEquals(wordByWord.suggest(selector, 10), batched.suggest(selector, 10));
+            Assert.assertEquals(wordByWord.getWord(word.getName()), batched.getWord(word.getName()));
+        }
+    }
+
+    public void testIndexNextLetter() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Sucker", 5), new Word("succubus", 1), new Word("sum", 30)));
+
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("m", 1, 30), new NextLetter("c", 4, 20)}, suggestionService.suggestNextLetter("su"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("e", 2, 20), new NextLetter("u", 1, 1)}, suggestionService.suggestNextLetter("SUCC"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("o", 1, 20)}, suggestionService.suggestNextLetter("success"));
+        Assert.assertEquals(0, suggestionService.suggestNextLetter("successor").length);
+        Assert.assertEquals(0, suggestionService.suggestNextLetter("x").length);
+    }
+
+    public void testIndexNextLetterSameAsBruteForce() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.random(randomInt(1, 8), "abcdeABC");
+            words.put(wordString, new Word(wordString, randomInt(1, 100000)));
+        }
+        suggestionService.addWords(words.values());
+
+        for (String name : words.keySet()) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            Assert.assertArrayEquals(SuggestionServiceImplTest.nextLetters(words.values(), selector), suggestionService.suggestNextLetter(selector));
+        }
+    }
+
+    public void testConcurrentReadsDuringUpdates() throws Exception {
+        final SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionEngine.SORTED_ARRAY);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        suggestionService.addWord(new Word("batch", 1));
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // every batch adds pair of words with the same prefix, readers should never see only one of them
+                for (int i = 0; i < 2000; i++) {
+                    suggestionService.addWords(Arrays.asList(new Word("batch" + i + "-one", i), new Word("batch" + i + "-two", i)));
+                }
+
+                writing.set(false);
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (writing.get()) {
+                        String selector = "batch" + randomInt(0, 2000) + "-";
+                        int matched = suggestionService.suggest(selector, 10).length;
+
+                        if (matched != 0 && matched != 2) {
+                            failure.set(selector + " matched " + matched);
+                        }
+
+                        if (suggestionService.suggest("batch", 10).length == 0) {
+                            failure.set("batch matched nothing");
+                        }
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(2, suggestionService.suggest("batch1999-", 10).length);
+    }
+
+    private int randomInt(int start, int end) {
+        return random.nextInt(end - start) + start;
+    }
+}
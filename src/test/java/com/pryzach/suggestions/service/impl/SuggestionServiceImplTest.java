@@ -17,6 +17,9 @@
 package com.pryzach.suggestions.service.impl;
 
 import com.pryzach.suggestions.SuggestionFactory;
+import com.pryzach.suggestions.constants.SuggestionConfiguration;
+import com.pryzach.suggestions.constants.TextDirection;
+import com.pryzach.suggestions.model.NextLetter;
 import com.pryzach.suggestions.model.Word;
 import com.pryzach.suggestions.model.WordRTL;
 import com.pryzach.suggestions.service.SuggestionService;
@@ -26,6 +29,14 @@ import org.junit.Assert;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SuggestionServiceImplTest extends TestCase {
     private final Random random = new Random();
@@ -304,6 +315,633 @@ public class SuggestionServiceImplTest extends TestCase {
         Assert.assertEquals(suggestedWordsString, "להצליח");
     }
 
+    public void testRtlDictionary() {
+        SuggestionService suggestionService = new SuggestionServiceImpl(SuggestionConfiguration.builder().direction(TextDirection.RTL).prefixDepth(3).build());
+
+        // plain words in display order, matched by their end
+        suggestionService.addWords(Arrays.asList(new Word("نجاح", 10), new Word("نجح", 11), new Word("להצליח", 11), new Word("הצלחה", 5)));
+
+        Assert.assertArrayEquals(new String[]{"نجاح"}, suggestionService.suggest("اح", 10));
+        Assert.assertArrayEquals(new String[]{"نجح", "نجاح"}, suggestionService.suggest("ح", 10));
+        Assert.assertArrayEquals(new String[]{"להצליח"}, suggestionService.suggest("ח", 10));
+        Assert.assertArrayEquals(new String[]{"להצליח"}, suggestionService.suggest("הצליח", 10));
+        Assert.assertEquals(0, suggestionService.suggest("نج", 10).length);
+        Assert.assertEquals("نجح|نجاح", suggestionService.suggest("ح", "|", 10));
+
+        // next letters precede selector
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("ج", 1, 11), new NextLetter("ا", 1, 10)}, suggestionService.suggestNextLetter("ح"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("ה", 1, 11)}, suggestionService.suggestNextLetter("צליח"));
+        Assert.assertArrayEquals(new String[]{"ج", "ا"}, suggestionService.suggestNextLetter("ح", suggestionService.suggest("ح", 10)));
+
+        Assert.assertTrue(suggestionService.removeWord(new Word("نجح", 0)));
+        Assert.assertArrayEquals(new String[]{"نجاح"}, suggestionService.suggest("ح", 10));
+    }
+
+    public void testRtlDictionarySameAsWordRTL() {
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(SuggestionConfiguration.builder().direction(TextDirection.RTL).prefixDepth(3).bucketCapacity(5).build());
+        SuggestionService reversed = new SuggestionServiceImpl(1, 3);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.random(randomInt(1, 8), "אבגדהוזחטיכלמנ");
+            words.put(wordString, new Word(wordString, i));
+        }
+
+        // bulk loaded in parallel, then changed word by word
+        suggestionService.addWords(words.values(), ForkJoinPool.commonPool());
+        for (Word word : words.values()) {
+            reversed.addWord(new WordRTL(word.getName(), word.getPopularityIndex()));
+        }
+
+        List<String> names = new ArrayList<>(words.keySet());
+        for (int i = 0; i < names.size(); i += 3) {
+            Word word = words.remove(names.get(i));
+
+            Assert.assertTrue(suggestionService.removeWord(word));
+            Assert.assertTrue(reversed.removeWord(new WordRTL(word.getName(), word.getPopularityIndex())));
+        }
+
+        for (String name : names) {
+            String selector = name.substring(randomInt(0, name.length()));
+            WordRTL[] expected = reversed.suggest(new WordRTL(selector), 5);
+
+            String[] expectedNames = new String[expected.length];
+            for (int i = 0; i < expected.length; i++) {
+                expectedNames[i] = expected[i].getName();
+            }
+
+            Assert.assertArrayEquals(expectedNames, suggestionService.suggest(selector, 5));
+            Assert.assertArrayEquals(reversed.suggestNextLetter(new StringBuilder(selector).reverse().toString()), suggestionService.suggestNextLetter(selector));
+        }
+    }
+
+    public void testLongSelectors() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        // selectors longer than max caching length used to be compiled into regex
+        suggestionService.addWord(new Word("c++ (programming language)", 10));
+        suggestionService.addWord(new Word("успешный-результат", 5));
+        suggestionService.addWord(new Word("version 2.0", 3));
+
+        Assert.assertArrayEquals(new String[]{"c++ (programming language)"}, suggestionService.suggest("c++ (prog", 10));
+        Assert.assertArrayEquals(new String[]{"успешный-результат"}, suggestionService.suggest("УСПЕШНЫЙ-рез", 10));
+        Assert.assertArrayEquals(new String[]{"version 2.0"}, suggestionService.suggest("version 2", 10));
+        Assert.assertArrayEquals(new String[]{"version 2.0"}, suggestionService.suggest("version 2.", 10));
+        Assert.assertEquals(0, suggestionService.suggest("version 2*", 10).length);
+    }
+
+    public void testSameWordIsKeptOnce() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 11), new Word("Success", 9)));
+        suggestionService.addWord(new Word("success", 12));
+        suggestionService.addWord(new Word("success", 1));
+
+        Assert.assertArrayEquals(new String[]{"success", "successor", "Success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"successor"}, suggestionService.suggest("success", 10));
+    }
+
+    public void testIncrementalAddWord() {
+        SuggestionService incremental = SuggestionFactory.getSuggestionService();
+        SuggestionService bulk = SuggestionFactory.getSuggestionService();
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 10)), randomInt(1, 100)));
+        }
+
+        for (Word word : words) {
+            incremental.addWord(word);
+        }
+        bulk.addWords(words);
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+
+            Assert.assertArrayEquals(bulk.suggest(selector, 10), incremental.suggest(selector, 10));
+        }
+    }
+
+    public void testParallelBulkLoad() {
+        SuggestionServiceImpl parallel = new SuggestionServiceImpl();
+        SuggestionService sequential = SuggestionFactory.getSuggestionService();
+
+        // same names come more than once (and with different case), so some words are updated during load
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String name = RandomStringUtils.randomAlphabetic(randomInt(1, 4));
+            words.add(new Word(random.nextBoolean() ? name : name.toUpperCase(), randomInt(1, 100)));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallel.addWords(words.subList(0, 10000), pool);
+            parallel.addWords(words.subList(10000, words.size()), pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Word word : words) {
+            sequential.addWord(word);
+        }
+
+        for (Word word : words) {
+            String selector = word.getName().substring(0, randomInt(1, word.getName().length() + 1));
+
+            Assert.assertArrayEquals(sequential.suggest(selector, 10), parallel.suggest(selector, 10));
+        }
+    }
+
+    public void testConcurrentReadsDuringUpdates() throws Exception {
+        // capped lists and short depth, so lists are refilled and long selectors are scanned while readers run
+        final SuggestionService suggestionService = new SuggestionServiceImpl(SuggestionConfiguration.builder().prefixDepth(3).bucketCapacity(4).build());
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        suggestionService.addWord(new Word("batch", 1));
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // every batch adds pair of words with the same prefix, readers should never see only one of them
+                for (int i = 0; i < 2000; i++) {
+                    suggestionService.addWords(Arrays.asList(new Word("batch" + i + "-one", i), new Word("batch" + i + "-two", i), new Word("bath" + i, i)));
+
+                    if (i > 0) {
+                        suggestionService.updatePopularity(new Word("batch" + (i - 1) + "-one", 2 * i));
+                        suggestionService.removeWord(new Word("bath" + (i - 1), 0));
+                    }
+                }
+
+                writing.set(false);
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (writing.get()) {
+                        String selector = "batch" + randomInt(0, 2000) + "-";
+                        int matched = suggestionService.suggest(selector, 10).length;
+
+                        if (matched != 0 && matched != 2) {
+                            failure.set(selector + " matched " + matched);
+                        }
+
+                        if (suggestionService.suggest("bat", 4).length == 0 || suggestionService.suggestNextLetter("ba").length == 0) {
+                            failure.set("bat matched nothing");
+                        }
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(2, suggestionService.suggest("batch1998-", 10).length);
+        Assert.assertEquals(4002, ((SuggestionServiceImpl) suggestionService).getWordCount());
+    }
+
+    public void testSuggestIntoBuffer() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // same buffer and selector builder are reused for every query
+        String[] buffer = new String[10];
+        StringBuilder selector = new StringBuilder();
+
+        for (Word word : words) {
+            selector.setLength(0);
+            selector.append(word.getName(), 0, randomInt(1, word.getName().length() + 1));
+
+            String[] suggestions = suggestionService.suggest(selector.toString(), buffer.length);
+            Assert.assertEquals(suggestions.length, suggestionService.suggest(selector, buffer));
+            Assert.assertArrayEquals(suggestions, Arrays.copyOf(buffer, suggestions.length));
+        }
+
+        Assert.assertEquals(0, suggestionService.suggest("", buffer));
+    }
+
+    public void testBatchSuggest() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        // prefixes of the same words (including long ones and different case), so look ups are shared a lot
+        String[] selectors = new String[3000];
+        int[] limits = new int[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            String name = words.get(randomInt(0, 200)).getName();
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            selectors[i] = random.nextBoolean() ? selector : selector.toUpperCase();
+            limits[i] = randomInt(0, 30);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            String[][] suggestions = suggestionService.suggest(selectors, limits, executor);
+
+            for (int i = 0; i < selectors.length; i++) {
+                Assert.assertArrayEquals(selectors[i], suggestionService.suggest(selectors[i], limits[i]), suggestions[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(0, suggestionService.suggest(new String[]{}, new int[]{}).length);
+    }
+
+    public void testBatchSuggestWithCappedLists() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService(SuggestionConfiguration.builder()
+                .bucketCapacity(2).prefixDepth(3).build());
+
+        suggestionService.addWords(Arrays.asList(new Word("aa1", 100), new Word("aa2", 90), new Word("aa3", 80),
+                new Word("ab1", 2), new Word("ab2", 1)));
+
+        // "a" keeps only its best words, so they can't serve "ab" even though there are fewer of them than limit
+        String[][] suggestions = suggestionService.suggest(new String[]{"a", "ab", "aa", "aa1"}, new int[]{10, 10, 10, 10});
+
+        Assert.assertArrayEquals(new String[]{"ab1", "ab2"}, suggestionService.suggest("ab", 10));
+        Assert.assertArrayEquals(suggestionService.suggest("a", 10), suggestions[0]);
+        Assert.assertArrayEquals(new String[]{"ab1", "ab2"}, suggestions[1]);
+        Assert.assertArrayEquals(suggestionService.suggest("aa", 10), suggestions[2]);
+        Assert.assertArrayEquals(new String[]{"aa1"}, suggestions[3]);
+    }
+
+    public void testAsyncSuggest() throws Exception {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 12)), randomInt(1, 100)));
+        }
+        suggestionService.addWords(words);
+
+        List<String> selectors = new ArrayList<>();
+        List<CompletableFuture<String[]>> suggestions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String name = words.get(randomInt(0, 200)).getName();
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            selectors.add(selector);
+            suggestions.add(suggestionService.suggestAsync(random.nextBoolean() ? selector : selector.toUpperCase(), 10));
+        }
+
+        for (int i = 0; i < selectors.size(); i++) {
+            Assert.assertArrayEquals(suggestionService.suggest(selectors.get(i), 10), suggestions.get(i).get());
+        }
+    }
+
+    public void testAsyncSuggestCoalescesSameSelector() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lookups = new AtomicInteger();
+
+        SuggestionService suggestionService = new SuggestionServiceImpl() {
+            @Override
+            public String[] suggest(String selector, int limit) {
+                lookups.incrementAndGet();
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.suggest(selector, limit);
+            }
+        };
+        suggestionService.addWords(Arrays.asList(new Word("the", 30), new Word("then", 20), new Word("there", 10)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // burst of the same selector in different case, while the first look up is still in progress
+            List<CompletableFuture<String[]>> suggestions = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                suggestions.add(suggestionService.suggestAsync(i % 2 == 0 ? "th" : "TH", 2, executor));
+            }
+            started.await();
+
+            CompletableFuture<String[]> otherLimit = suggestionService.suggestAsync("th", 3, executor);
+
+            release.countDown();
+
+            for (CompletableFuture<String[]> future : suggestions) {
+                Assert.assertArrayEquals(new String[]{"the", "then"}, future.get());
+            }
+            Assert.assertArrayEquals(new String[]{"the", "then", "there"}, otherLimit.get());
+            Assert.assertEquals(2, lookups.get());
+
+            // every request gets own copy of shared suggestions
+            suggestions.get(0).get()[0] = null;
+            Assert.assertEquals("the", suggestions.get(1).get()[0]);
+
+            // completed look up isn't reused
+            Assert.assertArrayEquals(new String[]{"the", "then"}, suggestionService.suggestAsync("th", 2, executor).get());
+            Assert.assertEquals(3, lookups.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testRemoveWordAndUpdatePopularity() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Success", 5), new Word("succubus", 1)));
+
+        Assert.assertTrue(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("successor", 0)));
+        Assert.assertFalse(suggestionService.removeWord(new Word("succes", 0)));
+        Assert.assertArrayEquals(new String[]{"success", "Success", "succubus"}, suggestionService.suggest("succ", 10));
+
+        // word can become less popular too
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("success", 2)));
+        Assert.assertTrue(suggestionService.updatePopularity(new Word("succubus", 30)));
+        Assert.assertFalse(suggestionService.updatePopularity(new Word("successor", 30)));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "success"}, suggestionService.suggest("succ", 10));
+        Assert.assertArrayEquals(new String[]{"Success", "success"}, suggestionService.suggest("SUCCES", 10));
+
+        suggestionService.addWord(new Word("successor", 3));
+        Assert.assertArrayEquals(new String[]{"succubus", "Success", "successor", "success"}, suggestionService.suggest("s", 10));
+    }
+
+    public void testRemoveWordAndUpdatePopularitySameAsRebuilt() {
+        SuggestionService suggestionService = SuggestionFactory.getSuggestionService();
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String wordString = RandomStringUtils.randomAlphabetic(randomInt(1, 6));
+            words.put(wordString, new Word(wordString, randomInt(1, 100)));
+        }
+        suggestionService.addWords(words.values());
+
+        List<String> names = new ArrayList<>(words.keySet());
+        for (int i = 0; i < names.size(); i += 2) {
+            String name = names.get(i);
+
+            if (random.nextBoolean()) {
+                Assert.assertTrue(suggestionService.removeWord(words.remove(name)));
+            } else {
+                words.put(name, new Word(name, randomInt(1, 100)));
+                Assert.assertTrue(suggestionService.updatePopularity(words.get(name)));
+            }
+        }
+
+        SuggestionService rebuilt = SuggestionFactory.getSuggestionService();
+        rebuilt.addWords(words.values());
+
+        for (String name : names) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+            int limit = randomInt(1, 20);
+
+            Assert.assertArrayEquals(rebuilt.suggest(selector, limit), suggestionService.suggest(selector, limit));
+        }
+    }
+
+    public void testBucketCapacitySameAsUncapped() {
+        SuggestionServiceImpl capped = new SuggestionServiceImpl(SuggestionConfiguration.builder().prefixDepth(3).bucketCapacity(5).build());
+        SuggestionService uncapped = new SuggestionServiceImpl(1, 3);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String wordString = RandomStringUtils.randomAlphabetic(randomInt(1, 6));
+            words.put(wordString, new Word(wordString, randomInt(1, 100)));
+        }
+
+        // first half is loaded in bulk, second one word by word
+        List<Word> loaded = new ArrayList<>(words.values());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            capped.addWords(loaded.subList(0, loaded.size() / 2), pool);
+        } finally {
+            pool.shutdown();
+        }
+        uncapped.addWords(loaded.subList(0, loaded.size() / 2));
+
+        for (Word word : loaded.subList(loaded.size() / 2, loaded.size())) {
+            capped.addWord(word);
+            uncapped.addWord(word);
+        }
+
+        assertSameSuggestions(uncapped, capped, words.keySet(), 5);
+        Assert.assertTrue(capped.getPrefixEntryCount() < ((SuggestionServiceImpl) uncapped).getPrefixEntryCount());
+
+        // removed and updated words make capped lists to be refilled
+        List<String> names = new ArrayList<>(words.keySet());
+        List<Word> updated = new ArrayList<>();
+        for (int i = 0; i < names.size(); i += 2) {
+            String name = names.get(i);
+
+            if (random.nextBoolean()) {
+                Word word = words.remove(name);
+
+                Assert.assertTrue(capped.removeWord(word));
+                Assert.assertTrue(uncapped.removeWord(word));
+            } else if (random.nextBoolean()) {
+                words.put(name, new Word(name, randomInt(1, 100)));
+
+                Assert.assertTrue(capped.updatePopularity(words.get(name)));
+                Assert.assertTrue(uncapped.updatePopularity(words.get(name)));
+            } else {
+                words.put(name, new Word(name, randomInt(1, 100)));
+                updated.add(words.get(name));
+            }
+        }
+
+        assertSameSuggestions(uncapped, capped, names, 5);
+
+        // popularity updated in bulk
+        capped.addWords(updated);
+        uncapped.addWords(updated);
+
+        assertSameSuggestions(uncapped, capped, names, 5);
+    }
+
+    public void testPrefixMemory() {
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl();
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("failure", 5)));
+
+        long prefixMemory = 0;
+        for (int length = 0; length <= 6; length++) {
+            prefixMemory += suggestionService.getPrefixMemory(length);
+        }
+
+        Assert.assertEquals(suggestionService.getPrefixCount() * 128L + 4 * suggestionService.getPrefixEntryCount(), prefixMemory);
+        // "s", "f" and "success", "successo", ... lists are of the same size as they are longer than max caching length
+        Assert.assertEquals(2 * 128 + 4 * 3, suggestionService.getPrefixMemory(1));
+        Assert.assertEquals(2 * 128 + 4 * 3, suggestionService.getPrefixMemory(6));
+        Assert.assertEquals(0, suggestionService.getPrefixMemory(7));
+    }
+
+    public void testMemoryBudgetCapsRarelyQueriedLengths() {
+        // long selectors are asked, lists of short prefixes get capped, while longest prefixes stay cached
+        SuggestionServiceImpl suggestionService = budgetedService(6, 7);
+
+        Assert.assertEquals(6, suggestionService.getPrefixDepth());
+    }
+
+    public void testMemoryBudgetShortensRarelyQueriedDepth() {
+        // short selectors are asked, longest prefixes are dropped and their selectors scan shorter prefixes instead
+        SuggestionServiceImpl suggestionService = budgetedService(1, 3);
+
+        Assert.assertEquals(5, suggestionService.getPrefixDepth());
+    }
+
+    /**
+     * Loads the same words into unbounded and budgeted services, selectors of given lengths are asked before budget is
+     * exceeded. Budgeted service is checked to fit budget and suggest the same as unbounded one
+     */
+    private SuggestionServiceImpl budgetedService(int fromLength, int toLength) {
+        List<Word> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            words.add(new Word(RandomStringUtils.randomAlphabetic(randomInt(3, 10)), randomInt(1, 100)));
+        }
+
+        SuggestionServiceImpl unbounded = new SuggestionServiceImpl(SuggestionConfiguration.builder().build());
+        unbounded.addWords(words.subList(0, 10000));
+        unbounded.addWords(words.subList(10000, words.size()));
+
+        long memoryBudget = unbounded.getIndexMemory() - 20000;
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(SuggestionConfiguration.builder().memoryBudget(memoryBudget).build());
+        suggestionService.addWords(words.subList(0, 10000));
+
+        for (Word word : words.subList(0, 10000)) {
+            suggestionService.suggest(word.getName().substring(0, Math.min(word.getName().length(), randomInt(fromLength, toLength))), 10);
+        }
+
+        suggestionService.addWords(words.subList(10000, words.size()));
+        Assert.assertTrue(suggestionService.getIndexMemory() <= memoryBudget);
+
+        List<String> names = new ArrayList<>();
+        for (Word word : words) {
+            names.add(word.getName());
+        }
+        assertSameSuggestions(unbounded, suggestionService, names, 10);
+
+        return suggestionService;
+    }
+
+    private void assertSameSuggestions(SuggestionService expected, SuggestionService actual, Collection<String> names, int maximumLimit) {
+        for (String name : names) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+            int limit = randomInt(1, maximumLimit + 1);
+
+            Assert.assertArrayEquals(expected.suggest(selector, limit), actual.suggest(selector, limit));
+        }
+    }
+
+    public void testIndexNextLetter() {
+        // short max caching length, so both short and long selectors are checked
+        SuggestionService suggestionService = new SuggestionServiceImpl(1, 3);
+
+        suggestionService.addWords(Arrays.asList(new Word("success", 10), new Word("successor", 20), new Word("Sucker", 5), new Word("succubus", 1), new Word("sum", 30)));
+
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("m", 1, 30), new NextLetter("c", 4, 20)}, suggestionService.suggestNextLetter("su"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("c", 3, 20), new NextLetter("k", 1, 5)}, suggestionService.suggestNextLetter("SUC"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("e", 2, 20), new NextLetter("u", 1, 1)}, suggestionService.suggestNextLetter("succ"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("o", 1, 20)}, suggestionService.suggestNextLetter("success"));
+        Assert.assertEquals(0, suggestionService.suggestNextLetter("sum").length);
+        Assert.assertEquals(0, suggestionService.suggestNextLetter("x").length);
+        Assert.assertEquals(0, suggestionService.suggestNextLetter("").length);
+
+        // letters follow removed and updated words
+        suggestionService.removeWord(new Word("Sucker", 0));
+        suggestionService.updatePopularity(new Word("succubus", 40));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("c", 3, 40)}, suggestionService.suggestNextLetter("suc"));
+        Assert.assertArrayEquals(new NextLetter[]{new NextLetter("u", 1, 40), new NextLetter("e", 2, 20)}, suggestionService.suggestNextLetter("succ"));
+    }
+
+    public void testIndexNextLetterSameAsBruteForce() {
+        SuggestionServiceImpl suggestionService = new SuggestionServiceImpl(1, 4);
+
+        Map<String, Word> words = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String wordString = RandomStringUtils.random(randomInt(1, 8), "abcdeABC");
+            words.put(wordString, new Word(wordString, randomInt(1, 100000)));
+        }
+
+        // bulk loaded in parallel, then changed word by word
+        suggestionService.addWords(words.values(), ForkJoinPool.commonPool());
+
+        List<String> names = new ArrayList<>(words.keySet());
+        for (int i = 0; i < names.size(); i += 3) {
+            String name = names.get(i);
+
+            if (random.nextBoolean()) {
+                suggestionService.removeWord(words.remove(name));
+            } else {
+                words.put(name, new Word(name, randomInt(1, 100000)));
+                suggestionService.updatePopularity(words.get(name));
+            }
+        }
+
+        for (String name : names) {
+            String selector = name.substring(0, randomInt(1, name.length() + 1));
+
+            Assert.assertArrayEquals(nextLetters(words.values(), selector), suggestionService.suggestNextLetter(selector));
+        }
+    }
+
+    /**
+     * Next letters worked out from every word
+     */
+    @SuppressWarnings("unchecked")
+    static NextLetter[] nextLetters(Collection<Word> words, String selector) {
+        final Map<Character, Word> best = new HashMap<>();
+        Map<Character, Integer> counts = new HashMap<>();
+
+        for (Word word : words) {
+            String name = word.getName().toLowerCase();
+
+            if (name.length() > selector.length() && name.startsWith(selector.toLowerCase())) {
+                Character letter = name.charAt(selector.length());
+
+                counts.put(letter, counts.containsKey(letter) ? counts.get(letter) + 1 : 1);
+                if (!best.containsKey(letter) || word.compareTo(best.get(letter)) > 0) {
+                    best.put(letter, word);
+                }
+            }
+        }
+
+        List<Character> letters = new ArrayList<>(best.keySet());
+        Collections.sort(letters, new Comparator<Character>() {
+            @Override
+            public int compare(Character letter1, Character letter2) {
+                return best.get(letter2).compareTo(best.get(letter1));
+            }
+        });
+
+        NextLetter[] nextLetters = new NextLetter[letters.size()];
+        for (int i = 0; i < nextLetters.length; i++) {
+            Character letter = letters.get(i);
+            nextLetters[i] = new NextLetter(letter.toString(), counts.get(letter), best.get(letter).getPopularityIndex());
+        }
+
+        return nextLetters;
+    }
+
     public void testSuggestEnginePerformanceAndReliabilityFullOxfordTest() {
         System.out.println("The Second Edition of the 20-volume  Oxford English Dictionary contains full entries for 171,476 words in current use");
         System.out.println("Started adding 171k words, please wait...");